@@ -0,0 +1,111 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import shared.Config;
+
+// Builds the preset deflate dictionary from a traffic recording made with Config.TRAFFIC_RECORD_PATH set.
+// Run from the project root: java DictionaryBuilder recording.bin [out.dict]
+// Segments are picked greedily by how many samples share their content; once picked, that content stops
+// counting, so the dictionary covers many different things. The best segments go last, closest to the data.
+public class DictionaryBuilder {
+    private static final int GRAM = 6;
+    private static final int SEGMENT = 48;
+    private static final int STEP = 4;
+    private static final int DICTIONARY_SIZE = 4096;
+    private static final int MAX_SAMPLES = 4000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java DictionaryBuilder recording.bin [out.dict]");
+            return;
+        }
+        String outPath = args.length > 1 ? args[1] : Config.COMPRESSION_DICTIONARY_PATH;
+        List<byte[]> samples = readSamples(args[0]);
+
+        Map<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                if (seen.add(gram(sample, i))) {
+                    frequency.merge(gram(sample, i), 1, Integer::sum);
+                }
+            }
+        }
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        while (size + SEGMENT <= DICTIONARY_SIZE) {
+            byte[] bestSample = null;
+            int bestOffset = 0;
+            long bestScore = 0;
+            for (byte[] sample : samples) {
+                for (int offset = 0; offset + SEGMENT <= sample.length; offset += STEP) {
+                    long score = score(sample, offset, frequency);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestSample = sample;
+                        bestOffset = offset;
+                    }
+                }
+            }
+            if (bestSample == null) {
+                break;
+            }
+            for (int i = bestOffset; i + GRAM <= bestOffset + SEGMENT; i++) {
+                frequency.remove(gram(bestSample, i));
+            }
+            chosen.add(Arrays.copyOfRange(bestSample, bestOffset, bestOffset + SEGMENT));
+            size += SEGMENT;
+        }
+
+        Collections.reverse(chosen);
+        try (OutputStream out = Files.newOutputStream(Paths.get(outPath))) {
+            for (byte[] segment : chosen) {
+                out.write(segment);
+            }
+        }
+        System.out.println("=== Dictionary ===");
+        System.out.println("Samples: " + samples.size());
+        System.out.println("Wrote " + size + " bytes in " + chosen.size() + " segments to " + outPath);
+    }
+
+    private static List<byte[]> readSamples(String path) throws IOException {
+        Set<String> unique = new HashSet<>();
+        List<byte[]> samples = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path))))) {
+            while (samples.size() < MAX_SAMPLES) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] sample = new byte[length];
+                in.readFully(sample);
+                if (unique.add(Base64.getEncoder().encodeToString(sample))) {
+                    samples.add(sample);
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static long score(byte[] sample, int offset, Map<Long, Integer> frequency) {
+        long score = 0;
+        for (int i = offset; i + GRAM <= offset + SEGMENT; i++) {
+            Integer count = frequency.get(gram(sample, i));
+            if (count != null && count > 1) {
+                score += count;
+            }
+        }
+        return score;
+    }
+
+    private static long gram(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < GRAM; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,77 @@
+import java.net.Socket;
+import server.GameServer;
+import shared.*;
+
+// Joins a client on a snapshot tick and checks that a player outside its area of interest, which the full
+// join state includes, is removed again by the deltas that follow. Run from the project root: java JoinTickCheck
+// Exits with status 1 on failure.
+public class JoinTickCheck {
+    public static void main(String[] args) throws Exception {
+        // Every tick is a snapshot tick, so the join state always lands on one.
+        Config.SNAPSHOT_RATE = Config.SERVER_TICK_RATE;
+        Config.USE_INPUT_COMMANDS = false;
+        Config.USE_INTEREST_MANAGEMENT = true;
+        Config.USE_DELTA_SNAPSHOTS = true;
+        int port = 9600 + (int) (Math.random() * 300);
+        Thread serverThread = new Thread(() -> new GameServer(port).start());
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(800);
+
+        MessageStream far = MessageStream.connect(new Socket("localhost", port), MessageStream.MODE_BINARY);
+        far.writeMessage(new NetworkMessage(NetworkMessage.PLAYER_JOIN, "far", new PlayerData("far", "Far", 3000, 3000, "hitman1_")));
+        far.flush();
+        Thread.sleep(300);
+
+        MessageStream near = MessageStream.connect(new Socket("localhost", port), MessageStream.MODE_BINARY);
+        near.writeMessage(new NetworkMessage(NetworkMessage.PLAYER_JOIN, "near", new PlayerData("near", "Near", 100, 100, "hitman1_")));
+        near.flush();
+
+        // Applies what arrives the way NetworkClient does: stale ticks are dropped, the rest acked.
+        WorldSnapshot[] received = new WorldSnapshot[Config.SNAPSHOT_HISTORY];
+        WorldSnapshot current = null;
+        int farHandle = 0;
+        boolean joinStateHadFar = false;
+        long end = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < end) {
+            NetworkMessage message = near.readMessage();
+            WorldSnapshot snapshot = null;
+            if (message.type == NetworkMessage.GAME_STATE) {
+                snapshot = ((GameStateData) message.data).snapshot;
+                for (PlayerData player : snapshot.players) {
+                    if ("far".equals(player.id)) {
+                        farHandle = player.handle;
+                        joinStateHadFar = true;
+                    }
+                }
+            } else if (message.type == NetworkMessage.SNAPSHOT) {
+                snapshot = (WorldSnapshot) message.data;
+            } else if (message.type == NetworkMessage.SNAPSHOT_DELTA) {
+                SnapshotDelta delta = (SnapshotDelta) message.data;
+                WorldSnapshot baseline = received[delta.baselineTick % received.length];
+                if (baseline != null && baseline.tick == delta.baselineTick) {
+                    snapshot = delta.applyTo(baseline);
+                }
+            }
+            if (snapshot == null || (current != null && snapshot.tick <= current.tick)) {
+                continue;
+            }
+            current = snapshot;
+            received[snapshot.tick % received.length] = snapshot;
+            near.writeMessage(new NetworkMessage(NetworkMessage.SNAPSHOT_ACK, "", null, snapshot.tick));
+            near.flush();
+        }
+
+        boolean ghost = false;
+        if (current != null) {
+            for (PlayerData player : current.players) {
+                ghost |= player.handle == farHandle;
+            }
+        }
+        System.out.println("join state had the far player: " + joinStateHadFar + ", still there at tick "
+                + (current == null ? -1 : current.tick) + ": " + ghost);
+        boolean ok = joinStateHadFar && current != null && !ghost;
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
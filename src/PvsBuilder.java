@@ -0,0 +1,29 @@
+import server.PotentiallyVisibleSet;
+import shared.Config;
+import shared.MapLoader;
+
+// Run from the project root after editing the map: java PvsBuilder [map.tmx]
+public class PvsBuilder {
+    public static void main(String[] args) throws Exception {
+        String mapPath = args.length > 0 ? args[0] : Config.MAP_PATH;
+        MapLoader map = new MapLoader();
+        map.load(mapPath);
+
+        long start = System.currentTimeMillis();
+        PotentiallyVisibleSet pvs = PotentiallyVisibleSet.build(map, Config.PVS_REGION_TILES,
+                PotentiallyVisibleSet.mapChecksum(mapPath));
+        long elapsed = System.currentTimeMillis() - start;
+
+        int regions = pvs.getRegionCount();
+        long visiblePairs = 0;
+        for (int r = 0; r < regions; r++) {
+            visiblePairs += pvs.countVisible(r);
+        }
+        String outPath = PotentiallyVisibleSet.pathFor(mapPath);
+        pvs.save(outPath);
+        System.out.println("=== PVS ===");
+        System.out.println("Regions: " + pvs.regionsX + "x" + pvs.regionsY + " of " + pvs.regionSize + "px");
+        System.out.println(String.format("Visible: %.1f%% of region pairs", visiblePairs * 100.0 / ((long) regions * regions)));
+        System.out.println("Built in " + elapsed + "ms, written to " + outPath);
+    }
+}
@@ -1,10 +1,15 @@
 import server.GameServer;
+import shared.Config;
 
 public class ServerMain {
     public static void main(String[] args) {
         System.out.println("=== Project-DeadGround Server ===");
         System.out.println("Starting server...");
 
+        if (args.length > 0) {
+            Config.SERVER_IO_MODE = args[0];
+        }
+
         GameServer server = new GameServer(8888);
         server.start();
     }
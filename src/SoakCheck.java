@@ -0,0 +1,115 @@
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import server.GameServer;
+import shared.*;
+
+// Soak run for object-stream connections: clients in object mode keep sending the same mutated PlayerData
+// while the server streams snapshots back, and the heap is sampled after a GC every few seconds. The run
+// fails if, once warmed up, the heap trend climbs faster than MAX_GROWTH_MB_PER_MINUTE. Run from the project root:
+//   java SoakCheck [seconds=120] [clients=8] [resetInterval=Config default]
+// An interval of -1 turns resets off, which should fail.
+public class SoakCheck {
+    private static final int SAMPLE_MS = 5000;
+    private static final double MAX_GROWTH_MB_PER_MINUTE = 2;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int clientCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        if (args.length > 2) {
+            Config.OBJECT_STREAM_RESET_INTERVAL = Integer.parseInt(args[2]);
+        }
+        Config.USE_INPUT_COMMANDS = false;
+        int port = 9600 + (int) (Math.random() * 300);
+        Thread serverThread = new Thread(() -> new GameServer(port).start());
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(800);
+
+        List<MessageStream> streams = new ArrayList<>();
+        List<PlayerData> states = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            String id = "soak" + i;
+            MessageStream stream = MessageStream.connect(new Socket("localhost", port), MessageStream.MODE_OBJECT);
+            PlayerData state = new PlayerData(id, "Soak " + i, 200 + i * 40, 200, "hitman1_");
+            stream.writeMessage(new NetworkMessage(NetworkMessage.PLAYER_JOIN, id, state));
+            stream.flush();
+            Thread reader = new Thread(() -> {
+                try {
+                    while (true) {
+                        stream.readMessage();
+                    }
+                } catch (Exception e) {
+                    // Closed at the end of the run
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+            streams.add(stream);
+            states.add(state);
+        }
+
+        long start = System.currentTimeMillis();
+        long end = start + seconds * 1000L;
+        long nextSample = start + SAMPLE_MS;
+        List<Long> samples = new ArrayList<>();
+        int sequence = 0;
+        while (System.currentTimeMillis() < end) {
+            sequence++;
+            for (int i = 0; i < streams.size(); i++) {
+                // The same object every time, as NetworkClient does with its player state.
+                PlayerData state = states.get(i);
+                state.x = 200 + i * 40 + (sequence % 400);
+                state.angle = sequence * 0.01;
+                streams.get(i).writeMessage(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, state.id, state, sequence));
+                streams.get(i).flush();
+            }
+            Thread.sleep(1000 / Config.CLIENT_SEND_RATE);
+            if (System.currentTimeMillis() >= nextSample) {
+                nextSample += SAMPLE_MS;
+                long heap = usedHeapMb();
+                samples.add(heap);
+                System.out.printf("%3ds heap %d MB | %s%n", (System.currentTimeMillis() - start) / 1000, heap,
+                        MessageStream.objectStreamSummary());
+            }
+        }
+
+        // The first quarter of the run is warm-up; after it the heap may wobble but its trend must stay flat.
+        List<Long> steady = samples.subList(samples.size() / 4, samples.size());
+        if (steady.size() < 4) {
+            System.out.println("FAILED: run too short to judge, give it at least " + 6 * SAMPLE_MS / 1000 + "s");
+            System.exit(1);
+        }
+        double perMinute = slope(steady) * 60000.0 / SAMPLE_MS;
+        boolean ok = perMinute <= MAX_GROWTH_MB_PER_MINUTE;
+        System.out.printf("heap after warm-up %d MB, at the end %d MB, trend %+.1f MB/min (allowed %.1f)%n",
+                steady.get(0), steady.get(steady.size() - 1), perMinute, MAX_GROWTH_MB_PER_MINUTE);
+        System.out.println(ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Least-squares slope per sample.
+    private static double slope(List<Long> values) {
+        int n = values.size();
+        double meanX = (n - 1) / 2.0;
+        double meanY = 0;
+        for (long value : values) {
+            meanY += value;
+        }
+        meanY /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (i - meanX) * (values.get(i) - meanY);
+            variance += (i - meanX) * (i - meanX);
+        }
+        return covariance / variance;
+    }
+
+    private static long usedHeapMb() throws InterruptedException {
+        System.gc();
+        Thread.sleep(100);
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+}
@@ -26,6 +26,8 @@ public class ClientGamePanel extends JPanel implements Runnable {
     public java.util.List<HitEffect> effects = new ArrayList<>();
     public java.util.List<CorpseEffect> corpses = new ArrayList<>();
     private java.util.List<Chicken> chickens = new ArrayList<>();
+    // The same chickens by id, kept in step with the list under its lock.
+    private final Map<Integer, Chicken> chickensById = new HashMap<>();
     private java.util.List<Long> chickenRespawnTimes = new ArrayList<>();
     private java.util.List<Weapon> weapons = new ArrayList<>();
     private java.util.List<ExplosionEffect> explosionEffects = new ArrayList<>();
@@ -45,6 +47,12 @@ public class ClientGamePanel extends JPanel implements Runnable {
     private String gameVersion = "Unknown";
 
     private NetworkClient networkClient;
+    private long lastNetworkSend = 0;
+    // How far a shooter's own bullet can be from the server's impact point and still be the one that hit.
+    private static final double BULLET_HIT_MATCH_DISTANCE = 64;
+    private final SnapshotBuffer interpolation = new SnapshotBuffer();
+    // Server time of the remote positions currently on screen, sent with hits for lag compensation.
+    private volatile long viewTime = 0;
 
     private String loadVersion() {
         try {
@@ -79,7 +87,7 @@ public class ClientGamePanel extends JPanel implements Runnable {
 
         mapLoader = new MapLoader();
         try {
-            mapLoader.load("assets/map/mappgameeeee.tmx");
+            mapLoader.load(Config.MAP_PATH);
             System.out.println("Map loaded successfully:");
             System.out.println("  Map size: " + mapLoader.mapWidthTiles + "x" + mapLoader.mapHeightTiles + " tiles");
             System.out.println("  Pixel size: " + mapLoader.mapPixelW + "x" + mapLoader.mapPixelH);
@@ -184,6 +192,7 @@ public class ClientGamePanel extends JPanel implements Runnable {
         });
 
         networkClient = new NetworkClient(this);
+        interpolation.useClock(networkClient.getClockSync());
         networkClient.connect(serverHost, 8888);
         networkClient.sendPlayerJoin(localPlayer.toPlayerData());
 
@@ -192,30 +201,35 @@ public class ClientGamePanel extends JPanel implements Runnable {
         gameStartTime = System.currentTimeMillis();
         gameVersion = loadVersion();
 
-        for (int i = 0; i < Config.CHICKEN_SPAWN_COUNT; i++) {
-            int x, y;
-            boolean validPosition = false;
-            int attempts = 0;
-
-            while (!validPosition && attempts < 50) {
-                int[] zone = Config.CHICKEN_SPAWN_ZONES[i % Config.CHICKEN_SPAWN_ZONES.length];
-                int zoneX = zone[0];
-                int zoneY = zone[1];
-                int zoneSize = zone[2];
-
-                x = zoneX + (int) (Math.random() * zoneSize) - zoneSize / 2;
-                y = zoneY + (int) (Math.random() * zoneSize) - zoneSize / 2;
-
-                Rectangle2D.Double testRect = new Rectangle2D.Double(x, y, 32, 34);
-                boolean canSpawn = !Utils.rectHitsCollision(testRect, mapLoader.collisions) &&
-                        x >= 50 && y >= 50 &&
-                        x < mapLoader.mapPixelW - 82 && y < mapLoader.mapPixelH - 84;
-
-                if (canSpawn) {
-                    chickens.add(new Chicken(i, x, y));
-                    validPosition = true;
+        // Connected, the server owns the chickens and sends them; local ones would only clash with its ids.
+        if (!networkClient.isConnected()) {
+            for (int i = 0; i < Config.CHICKEN_SPAWN_COUNT; i++) {
+                int x, y;
+                boolean validPosition = false;
+                int attempts = 0;
+
+                while (!validPosition && attempts < 50) {
+                    int[] zone = Config.CHICKEN_SPAWN_ZONES[i % Config.CHICKEN_SPAWN_ZONES.length];
+                    int zoneX = zone[0];
+                    int zoneY = zone[1];
+                    int zoneSize = zone[2];
+
+                    x = zoneX + (int) (Math.random() * zoneSize) - zoneSize / 2;
+                    y = zoneY + (int) (Math.random() * zoneSize) - zoneSize / 2;
+
+                    Rectangle2D.Double testRect = new Rectangle2D.Double(x, y, 32, 34);
+                    boolean canSpawn = !Utils.rectHitsCollision(testRect, mapLoader.collisions) &&
+                            x >= 50 && y >= 50 &&
+                            x < mapLoader.mapPixelW - 82 && y < mapLoader.mapPixelH - 84;
+
+                    if (canSpawn) {
+                        Chicken chicken = new Chicken(i, x, y);
+                        chickens.add(chicken);
+                        chickensById.put(chicken.id, chicken);
+                        validPosition = true;
+                    }
+                    attempts++;
                 }
-                attempts++;
             }
         }
 
@@ -285,7 +299,7 @@ public class ClientGamePanel extends JPanel implements Runnable {
 
         ArrayList<ClientPlayer> playersCopy = new ArrayList<>(otherPlayers.values());
         for (ClientPlayer player : playersCopy) {
-            if (player != null) {
+            if (player != null && player.inView) {
                 player.draw(g2, camera.camX, camera.camY, mousePoint, camera);
                 if (player.isDashing) {
                     player.drawDashEffect(g2, player.x - camera.camX, player.y - camera.camY);
@@ -402,8 +416,14 @@ public class ClientGamePanel extends JPanel implements Runnable {
                     mapLoader.mapPixelW, mapLoader.mapPixelH,
                     camera, otherPlayers, new ArrayList<>());
 
-            if (System.currentTimeMillis() % Config.NETWORK_UPDATE_RATE == 0) {
-                networkClient.sendPlayerUpdate(localPlayer.toPlayerData());
+            long now = System.currentTimeMillis();
+            if (now - lastNetworkSend >= 1000L / Config.CLIENT_SEND_RATE) {
+                lastNetworkSend = now;
+                if (Config.USE_INPUT_COMMANDS) {
+                    networkClient.sendInputs(localPlayer.unacknowledgedInputs(Config.INPUT_REDUNDANCY));
+                } else {
+                    networkClient.sendPlayerUpdate(localPlayer.toPlayerData());
+                }
             }
 
             if (networkClient != null && networkClient.lastPlayerData != null) {
@@ -429,12 +449,18 @@ public class ClientGamePanel extends JPanel implements Runnable {
                         blt.justSpawned = false;
                     }
 
+                    // The server decides what bullets hit and says so with BULLET_HIT; see bulletHit.
+                    if (Config.USE_SERVER_PROJECTILES) {
+                        continue;
+                    }
+
                     Rectangle2D.Double bRect = blt.bounds();
 
                     synchronized (otherPlayers) {
                         ArrayList<ClientPlayer> playersCopy = new ArrayList<>(otherPlayers.values());
                         for (ClientPlayer player : playersCopy) {
-                            if (player != null && player.hp > 0 && !player.playerId.equals(localPlayer.playerId)) {
+                            if (player != null && player.hp > 0 && player.inView
+                                    && !player.playerId.equals(localPlayer.playerId)) {
                                 Rectangle2D.Double playerRect = player.bounds();
                                 if (playerRect.intersects(bRect)) {
                                     System.out
@@ -442,7 +468,10 @@ public class ClientGamePanel extends JPanel implements Runnable {
                                     effects.add(new HitEffect((int) (blt.x + 4), (int) (blt.y + 4)));
                                     bulletsToRemove.add(blt);
 
-                                    networkClient.sendPlayerHit(player.playerId, Config.BULLET_DAMAGE);
+                                    networkClient.sendPlayerHit(player.playerId, Config.BULLET_DAMAGE,
+                                            Config.USE_INTERPOLATION ? viewTime
+                                                    : interpolation.estimateServerTime(System.currentTimeMillis()),
+                                            blt.x + 2, blt.y + 2);
                                     break;
                                 }
                             }
@@ -503,23 +532,32 @@ public class ClientGamePanel extends JPanel implements Runnable {
                 ArrayList<Chicken> chickensToRemove = new ArrayList<>();
                 ArrayList<Long> respawnTimesToRemove = new ArrayList<>();
                 long chickenCurrentTime = System.currentTimeMillis();
+                // While connected the chickens are the server's: they move and respawn there and arrive in its
+                // updates, so only dead ones are dropped here.
+                boolean simulateChickens = !networkClient.isConnected();
 
                 for (int i = 0; i < chickens.size(); i++) {
                     Chicken chicken = chickens.get(i);
                     if (chicken != null) {
-                        chicken.update(mapLoader.collisions, mapLoader.mapPixelW, mapLoader.mapPixelH, chickens);
+                        if (simulateChickens) {
+                            chicken.update(mapLoader.collisions, mapLoader.mapPixelW, mapLoader.mapPixelH, chickens);
+                        }
                         if (chicken.hp <= 0) {
                             chickensToRemove.add(chicken);
-                            chickenRespawnTimes.add(chickenCurrentTime);
+                            if (simulateChickens) {
+                                chickenRespawnTimes.add(chickenCurrentTime);
+                            }
                         }
                     }
                 }
 
                 for (Chicken chicken : chickensToRemove) {
                     chickens.remove(chicken);
+                    chickensById.remove(chicken.id, chicken);
+                    interpolation.remove(chicken.id);
                 }
 
-                for (int i = chickenRespawnTimes.size() - 1; i >= 0; i--) {
+                for (int i = chickenRespawnTimes.size() - 1; i >= 0 && simulateChickens; i--) {
                     if (chickenCurrentTime - chickenRespawnTimes.get(i) >= Config.CHICKEN_RESPAWN_TIME * 1000) {
                         int x, y;
                         boolean validPosition = false;
@@ -541,7 +579,9 @@ public class ClientGamePanel extends JPanel implements Runnable {
                                     x < mapLoader.mapPixelW - 82 && y < mapLoader.mapPixelH - 84;
 
                             if (canSpawn) {
-                                chickens.add(new Chicken(chickens.size(), x, y));
+                                Chicken chicken = new Chicken(chickens.size(), x, y);
+                                chickens.add(chicken);
+                                chickensById.put(chicken.id, chicken);
                                 validPosition = true;
                             }
                             attempts++;
@@ -592,6 +632,10 @@ public class ClientGamePanel extends JPanel implements Runnable {
                 }
             }
 
+            if (Config.USE_INTERPOLATION) {
+                applyInterpolation();
+            }
+
             camera.centerOn(localPlayer.getCenterX(), localPlayer.getCenterY(),
                     getWidth(), getHeight(),
                     mapLoader.mapPixelW, mapLoader.mapPixelH);
@@ -610,6 +654,68 @@ public class ClientGamePanel extends JPanel implements Runnable {
         }
     }
 
+    // Moves remote players and chickens to where their buffered snapshots put them at the render time.
+    private void applyInterpolation() {
+        long renderTime = interpolation.renderTime(System.currentTimeMillis());
+        viewTime = renderTime;
+        double[] state = new double[3];
+        synchronized (otherPlayers) {
+            for (ClientPlayer player : otherPlayers.values()) {
+                if (interpolation.sample(player.playerId, renderTime, state)) {
+                    player.x = (int) Math.round(state[0]);
+                    player.y = (int) Math.round(state[1]);
+                    player.angle = state[2];
+                }
+            }
+        }
+        synchronized (chickens) {
+            for (Chicken chicken : chickens) {
+                if (interpolation.sample(chicken.id, renderTime, state)) {
+                    chicken.x = (int) Math.round(state[0]);
+                    chicken.y = (int) Math.round(state[1]);
+                    chicken.angle = state[2];
+                }
+            }
+        }
+    }
+
+    // Players and chickens missing from a snapshot are outside our area of interest. Players stay known but
+    // hidden; chickens are dropped and come back through updateChickens when they are in view again.
+    public void retainInterest(WorldSnapshot snapshot) {
+        Set<String> visiblePlayers = new HashSet<>();
+        for (PlayerData playerData : snapshot.players) {
+            visiblePlayers.add(playerData.id);
+        }
+        synchronized (otherPlayers) {
+            for (ClientPlayer player : otherPlayers.values()) {
+                boolean inView = visiblePlayers.contains(player.playerId);
+                if (player.inView && !inView) {
+                    interpolation.remove(player.playerId);
+                }
+                player.inView = inView;
+            }
+        }
+        Set<Integer> visibleChickens = new HashSet<>();
+        for (ChickenData chickenData : snapshot.chickens) {
+            visibleChickens.add(chickenData.id);
+        }
+        synchronized (chickens) {
+            Iterator<Chicken> it = chickens.iterator();
+            while (it.hasNext()) {
+                Chicken chicken = it.next();
+                if (!visibleChickens.contains(chicken.id)) {
+                    it.remove();
+                    chickensById.remove(chicken.id, chicken);
+                    interpolation.remove(chicken.id);
+                }
+            }
+        }
+    }
+
+    public void observeServerTime(long serverTime) {
+        interpolation.observeServerTime(serverTime, System.currentTimeMillis());
+    }
+
     public static boolean rectHitsCollision(Rectangle2D.Double r, java.util.List<Rectangle2D.Double> collisions) {
         for (Rectangle2D.Double c : collisions)
             if (c.intersects(r))
@@ -682,6 +788,9 @@ public class ClientGamePanel extends JPanel implements Runnable {
 
         g2.setColor(Color.WHITE);
         g2.setFont(new Font("Arial", Font.BOLD, 12));
+        if (networkClient != null) {
+            g2.drawString(networkClient.getClockSync().summary(), 15, getHeight() - 85);
+        }
         g2.drawString("X: " + (int) localPlayer.x, 15, getHeight() - 70);
         g2.drawString("Y: " + (int) localPlayer.y, 15, getHeight() - 55);
         g2.drawString("FPS: " + currentFPS, 15, getHeight() - 40);
@@ -755,7 +864,40 @@ public class ClientGamePanel extends JPanel implements Runnable {
         }
     }
 
+    public void reconcileLocalPlayer(PlayerData serverState) {
+        List<Rectangle2D.Double> blockers;
+        synchronized (otherPlayers) {
+            blockers = ClientPlayer.boundsOf(otherPlayers.values());
+        }
+        localPlayer.reconcile(serverState, mapLoader.collisions, blockers);
+    }
+
+    public boolean hasPlayer(String playerId) {
+        synchronized (otherPlayers) {
+            return otherPlayers.containsKey(playerId);
+        }
+    }
+
+    // Pickups are decided locally, so a weapon this client already took stays collected.
+    public void setWeapons(WeaponData[] weaponData) {
+        synchronized (weapons) {
+            Set<Integer> collected = new HashSet<>();
+            for (Weapon weapon : weapons) {
+                if (weapon.collected) {
+                    collected.add(weapon.id);
+                }
+            }
+            weapons.clear();
+            for (WeaponData data : weaponData) {
+                Weapon weapon = new Weapon(data.id, data.x, data.y);
+                weapon.collected = collected.contains(data.id);
+                weapons.add(weapon);
+            }
+        }
+    }
+
     public void removePlayer(String playerId) {
+        interpolation.remove(playerId);
         synchronized (otherPlayers) {
             ClientPlayer player = otherPlayers.remove(playerId);
             if (player != null) {
@@ -769,43 +911,58 @@ public class ClientGamePanel extends JPanel implements Runnable {
     }
 
     public void updateChicken(ChickenData chickenData) {
-        synchronized (chickens) {
-            Chicken existingChicken = null;
-            for (Chicken chicken : chickens) {
-                if (chicken.id == chickenData.id) {
-                    existingChicken = chicken;
-                    break;
-                }
-            }
+        updateChickens(new ChickenData[] { chickenData });
+    }
 
-            if (existingChicken != null) {
-                int oldHp = existingChicken.hp;
-                existingChicken.x = chickenData.x;
-                existingChicken.y = chickenData.y;
-                existingChicken.hp = chickenData.hp;
-                existingChicken.angle = chickenData.angle;
-                existingChicken.isMoving = chickenData.isMoving;
-                existingChicken.isHit = chickenData.isHit;
-                existingChicken.isIdle = chickenData.isIdle;
-                existingChicken.currentFrame = chickenData.currentFrame;
+    public void updateChickens(ChickenData[] chickenStates) {
+        updateChickens(chickenStates, interpolation.estimateServerTime(System.currentTimeMillis()));
+    }
 
-                if (chickenData.hp < oldHp && chickenData.hp > 0) {
-                    existingChicken.takeDamage(0);
+    // Applies a whole batch in one pass, looking chickens up by id instead of scanning the list for each.
+    public void updateChickens(ChickenData[] chickenStates, long serverTime) {
+        synchronized (chickens) {
+            for (ChickenData chickenData : chickenStates) {
+                Chicken existingChicken = chickensById.get(chickenData.id);
+                if (existingChicken != null) {
+                    int oldHp = existingChicken.hp;
+                    if (Config.USE_INTERPOLATION) {
+                        interpolation.push(chickenData.id, serverTime, chickenData.x, chickenData.y, chickenData.angle);
+                    } else {
+                        existingChicken.x = chickenData.x;
+                        existingChicken.y = chickenData.y;
+                        existingChicken.angle = chickenData.angle;
+                    }
+                    existingChicken.hp = chickenData.hp;
+                    existingChicken.isMoving = chickenData.isMoving;
+                    existingChicken.isHit = chickenData.isHit;
+                    existingChicken.isIdle = chickenData.isIdle;
+                    existingChicken.currentFrame = chickenData.currentFrame;
+
+                    if (chickenData.hp < oldHp && chickenData.hp > 0) {
+                        existingChicken.takeDamage(0);
+                    }
+                } else if (chickenData.hp > 0) {
+                    Chicken newChicken = new Chicken(chickenData.id, chickenData.x, chickenData.y);
+                    newChicken.hp = chickenData.hp;
+                    newChicken.angle = chickenData.angle;
+                    newChicken.isMoving = chickenData.isMoving;
+                    newChicken.isHit = chickenData.isHit;
+                    newChicken.isIdle = chickenData.isIdle;
+                    newChicken.currentFrame = chickenData.currentFrame;
+                    chickens.add(newChicken);
+                    chickensById.put(newChicken.id, newChicken);
+                    interpolation.remove(newChicken.id);
+                    interpolation.push(newChicken.id, serverTime, chickenData.x, chickenData.y, chickenData.angle);
                 }
-            } else if (chickenData.hp > 0) {
-                Chicken newChicken = new Chicken(chickenData.id, chickenData.x, chickenData.y);
-                newChicken.hp = chickenData.hp;
-                newChicken.angle = chickenData.angle;
-                newChicken.isMoving = chickenData.isMoving;
-                newChicken.isHit = chickenData.isHit;
-                newChicken.isIdle = chickenData.isIdle;
-                newChicken.currentFrame = chickenData.currentFrame;
-                chickens.add(newChicken);
             }
         }
     }
 
     public void updatePlayer(PlayerData playerData) {
+        updatePlayer(playerData, interpolation.estimateServerTime(System.currentTimeMillis()));
+    }
+
+    public void updatePlayer(PlayerData playerData, long serverTime) {
         synchronized (otherPlayers) {
             ClientPlayer player = otherPlayers.get(playerData.id);
             if (player != null) {
@@ -830,10 +987,14 @@ public class ClientGamePanel extends JPanel implements Runnable {
                     }
                 }
 
-                double lerpFactor = Config.PLAYER_LERP_FACTOR;
-                player.x = (int) (player.x + (playerData.x - player.x) * lerpFactor);
-                player.y = (int) (player.y + (playerData.y - player.y) * lerpFactor);
-                player.angle = playerData.angle;
+                if (Config.USE_INTERPOLATION) {
+                    interpolation.push(playerData.id, serverTime, playerData.x, playerData.y, playerData.angle);
+                } else {
+                    double lerpFactor = Config.PLAYER_LERP_FACTOR;
+                    player.x = (int) (player.x + (playerData.x - player.x) * lerpFactor);
+                    player.y = (int) (player.y + (playerData.y - player.y) * lerpFactor);
+                    player.angle = playerData.angle;
+                }
                 player.ammo = playerData.ammo;
                 player.kills = playerData.kills;
                 player.shooting = playerData.shooting;
@@ -884,7 +1045,47 @@ public class ClientGamePanel extends JPanel implements Runnable {
                 }
             }
             if (!exists) {
-                bullets.add(new Bullet(bulletData.x, bulletData.y, bulletData.angle, null));
+                Bullet bullet = new Bullet(bulletData.x, bulletData.y, bulletData.angle, null);
+                bullet.id = bulletData.id;
+                bullets.add(bullet);
+            }
+        }
+    }
+
+    // A server bullet stopped in a player or chicken. The shooter's own copy of the bullet never learned its
+    // id, so the nearest unidentified bullet to the impact goes too.
+    public void bulletHit(BulletHit hit, String playerId) {
+        synchronized (bullets) {
+            Bullet nearest = null;
+            double nearestDistance = BULLET_HIT_MATCH_DISTANCE;
+            for (int i = bullets.size() - 1; i >= 0; i--) {
+                Bullet b = bullets.get(i);
+                if (b == null || (hit.bulletId != 0 && b.id == hit.bulletId)) {
+                    bullets.remove(i);
+                    continue;
+                }
+                double distance = Math.hypot(b.x + 2 - hit.x, b.y + 2 - hit.y);
+                if (b.id == 0 && distance < nearestDistance) {
+                    nearest = b;
+                    nearestDistance = distance;
+                }
+            }
+            if (nearest != null) {
+                bullets.remove(nearest);
+            }
+        }
+        if (hit.kind == BulletHit.PLAYER && playerId != null) {
+            hitPlayer(playerId, Config.BULLET_DAMAGE);
+        } else if (hit.kind == BulletHit.CHICKEN) {
+            synchronized (chickens) {
+                Chicken chicken = chickensById.get(hit.target);
+                if (chicken != null && chicken.hp > 0) {
+                    chicken.takeDamage(Config.BULLET_DAMAGE);
+                    for (int j = 0; j < 5; j++) {
+                        effects.add(new HitEffect((int) (chicken.x + Math.random() * 32),
+                                (int) (chicken.y + Math.random() * 32)));
+                    }
+                }
             }
         }
     }
@@ -918,7 +1119,7 @@ public class ClientGamePanel extends JPanel implements Runnable {
 
         synchronized (otherPlayers) {
             for (ClientPlayer player : otherPlayers.values()) {
-                if (player != null && player.hp > 0) {
+                if (player != null && player.hp > 0 && player.inView) {
                     int startX = localPlayer.x - camera.camX;
                     int startY = localPlayer.y - camera.camY;
                     int endX = player.x - camera.camX;
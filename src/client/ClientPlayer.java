@@ -6,6 +6,7 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,8 @@ public class ClientPlayer {
     boolean reloading = false;
     boolean hasWeapon = false;
     boolean isGodMode = false;
+    // False while the server leaves this player out of our snapshots; it is not drawn or hit until it is back.
+    boolean inView = true;
     int meleeCooldown = 0;
     BufferedImage meleeImage;
 
@@ -36,6 +39,24 @@ public class ClientPlayer {
     int dashCooldown = 0;
     int dashDistance = 0;
     double dashAngle = 0;
+    boolean dashRequested = false;
+
+    // Prediction: every frame's input is applied locally right away and kept, with the state it produced,
+    // until the server reports it processed. Server positions are then replayed forward through the rest.
+    private static final int MAX_PENDING_INPUTS = 256;
+    private final PlayerMovement movement = new PlayerMovement();
+    private final ArrayDeque<PredictedInput> pendingInputs = new ArrayDeque<>();
+    private int nextInputSequence = 1;
+
+    private static class PredictedInput {
+        final InputCommand input;
+        PlayerMovement after;
+
+        PredictedInput(InputCommand input, PlayerMovement after) {
+            this.input = input;
+            this.after = after;
+        }
+    }
 
     long deathTime = 0;
     boolean isDead = false;
@@ -150,48 +171,33 @@ public class ClientPlayer {
         angle = Math.atan2(
                 mouse.y + camera.camY - centerY,
                 mouse.x + camera.camX - centerX);
-        int dx = 0, dy = 0;
-        isMoving = false;
-
-        if (isDashing) {
-            double dashDx = Math.cos(dashAngle) * Config.DASH_SPEED;
-            double dashDy = Math.sin(dashAngle) * Config.DASH_SPEED;
-            dx = (int) dashDx;
-            dy = (int) dashDy;
-            dashDistance += Config.DASH_SPEED;
-            if (dashDistance >= Config.DASH_DISTANCE) {
-                isDashing = false;
-                dashDistance = 0;
-            }
-        } else {
-            if (movingUp) {
-                dy -= Config.PLAYER_SPEED;
-                isMoving = true;
-            }
-            if (movingDown) {
-                dy += Config.PLAYER_SPEED;
-                isMoving = true;
-            }
-            if (movingLeft) {
-                dx -= Config.PLAYER_SPEED;
-                isMoving = true;
-            }
-            if (movingRight) {
-                dx += Config.PLAYER_SPEED;
-                isMoving = true;
+        int buttons = 0;
+        if (movingUp) buttons |= InputCommand.UP;
+        if (movingDown) buttons |= InputCommand.DOWN;
+        if (movingLeft) buttons |= InputCommand.LEFT;
+        if (movingRight) buttons |= InputCommand.RIGHT;
+        if (shooting) buttons |= InputCommand.FIRE;
+        if (dashRequested) buttons |= InputCommand.DASH;
+        if (hasWeapon) buttons |= InputCommand.ARMED;
+        if (reloading) buttons |= InputCommand.RELOADING;
+        dashRequested = false;
+
+        boolean wasDashing = isDashing;
+        InputCommand input = new InputCommand(nextInputSequence++, buttons, angle);
+        synchronized (movement) {
+            movement.x = x;
+            movement.y = y;
+            movement.apply(input, collisions, boundsOf(otherPlayers.values()));
+            syncMovement();
+            if (Config.USE_INPUT_COMMANDS) {
+                pendingInputs.addLast(new PredictedInput(input, movement.copy()));
+                if (pendingInputs.size() > MAX_PENDING_INPUTS) {
+                    pendingInputs.pollFirst();
+                }
             }
         }
-
-        if (dx != 0) {
-            Rectangle2D.Double nextX = new Rectangle2D.Double(x + dx, y, stand.getWidth(), stand.getHeight());
-            if (!Utils.rectHitsCollision(nextX, collisions) && !collidesWithPlayers(nextX, otherPlayers))
-                x += dx;
-        }
-
-        if (dy != 0) {
-            Rectangle2D.Double nextY = new Rectangle2D.Double(x, y + dy, stand.getWidth(), stand.getHeight());
-            if (!Utils.rectHitsCollision(nextY, collisions) && !collidesWithPlayers(nextY, otherPlayers))
-                y += dy;
+        if (isDashing && !wasDashing) {
+            playTeleportSound();
         }
 
         if (isMoving) {
@@ -234,24 +240,82 @@ public class ClientPlayer {
             shootCooldown--;
         if (meleeCooldown > 0)
             meleeCooldown--;
-        if (dashCooldown > 0)
-            dashCooldown--;
 
         if (justShot && shootCooldown == 0) {
             justShot = false;
         }
     }
 
+    // The dash starts on the next frame's input so the server sees it at the same point in the sequence.
     public void startDash() {
         if (dashCooldown == 0 && !isDashing) {
-            isDashing = true;
-            dashAngle = angle;
-            dashDistance = 0;
-            dashCooldown = Config.DASH_COOLDOWN;
-            playTeleportSound();
+            dashRequested = true;
         }
     }
 
+    private void syncMovement() {
+        x = movement.x;
+        y = movement.y;
+        isDashing = movement.dashing;
+        dashDistance = movement.dashDistance;
+        dashAngle = movement.dashAngle;
+        dashCooldown = movement.dashCooldown;
+        isMoving = movement.moving;
+    }
+
+    // The newest inputs the server has not confirmed yet, oldest first.
+    public List<InputCommand> unacknowledgedInputs(int max) {
+        synchronized (movement) {
+            List<InputCommand> inputs = new ArrayList<>(Math.min(max, pendingInputs.size()));
+            int skip = Math.max(0, pendingInputs.size() - max);
+            for (PredictedInput pending : pendingInputs) {
+                if (skip-- > 0) {
+                    continue;
+                }
+                inputs.add(pending.input);
+            }
+            return inputs;
+        }
+    }
+
+    // Called from the network thread with the server's state for this player.
+    public void reconcile(PlayerData server, List<Rectangle2D.Double> collisions, List<Rectangle2D.Double> blockers) {
+        synchronized (movement) {
+            PredictedInput acknowledged = null;
+            while (!pendingInputs.isEmpty() && pendingInputs.peekFirst().input.sequence <= server.lastInput) {
+                acknowledged = pendingInputs.pollFirst();
+            }
+            if (acknowledged == null) {
+                return;
+            }
+            PlayerMovement state = acknowledged.after.copy();
+            state.x = (int) server.x;
+            state.y = (int) server.y;
+            for (PredictedInput pending : pendingInputs) {
+                state.apply(pending.input, collisions, blockers);
+                pending.after = state.copy();
+            }
+            movement.x = state.x;
+            movement.y = state.y;
+            movement.dashing = state.dashing;
+            movement.dashDistance = state.dashDistance;
+            movement.dashAngle = state.dashAngle;
+            movement.dashCooldown = state.dashCooldown;
+            movement.moving = state.moving;
+            syncMovement();
+        }
+    }
+
+    static List<Rectangle2D.Double> boundsOf(Iterable<ClientPlayer> players) {
+        List<Rectangle2D.Double> bounds = new ArrayList<>();
+        for (ClientPlayer player : players) {
+            if (player != null && player.hp > 0 && player.inView) {
+                bounds.add(player.bounds());
+            }
+        }
+        return bounds;
+    }
+
     public void playTeleportSound() {
         try {
             if (teleportClip != null) {
@@ -288,9 +352,8 @@ public class ClientPlayer {
         int centerY = getCenterY();
 
         double cos = Math.cos(angle), sin = Math.sin(angle);
-        double muzzleDistance = 20;
-        double bx = centerX + cos * muzzleDistance;
-        double by = centerY + sin * muzzleDistance;
+        double bx = centerX + cos * Config.BULLET_MUZZLE_DISTANCE;
+        double by = centerY + sin * Config.BULLET_MUZZLE_DISTANCE;
 
         bullets.add(new Bullet(bx, by, angle, null));
     }
@@ -381,15 +444,6 @@ public class ClientPlayer {
         }
     }
 
-    private boolean collidesWithPlayers(Rectangle2D.Double rect, Map<String, ClientPlayer> otherPlayers) {
-        for (ClientPlayer player : otherPlayers.values()) {
-            if (player != null && player.hp > 0 && rect.intersects(player.bounds())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void draw(Graphics2D g2, int camX, int camY, Point mouse, Camera camera) {
         int drawX = x - camX;
         int drawY = y - camY;
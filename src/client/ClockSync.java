@@ -0,0 +1,84 @@
+package client;
+
+import shared.*;
+
+// NTP-style estimate of the server clock from PING/PONG round trips. Of the last few samples the one with the
+// shortest round trip wins, since the least of its time was spent queued, so one slow pong cannot skew the offset.
+public class ClockSync {
+    private static final int WINDOW = 8;
+
+    private final long[] offsets = new long[WINDOW];
+    private final long[] roundTrips = new long[WINDOW];
+    private int count = 0;
+    private int next = 0;
+    private long offset = 0;
+    private double smoothedRtt = -1;
+    private double jitter = 0;
+    private int serverTick = 0;
+    private long serverTickTime = 0;
+
+    // t0 client send, t1 server receive, t2 server send, t3 client receive.
+    public synchronized void addSample(long t0, long t1, long t2, long t3, int tick) {
+        long roundTrip = Math.max(0, (t3 - t0) - (t2 - t1));
+        offsets[next] = ((t1 - t0) + (t2 - t3)) / 2;
+        roundTrips[next] = roundTrip;
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (roundTrips[i] < roundTrips[best]) {
+                best = i;
+            }
+        }
+        offset = offsets[best];
+
+        // Same smoothing as TCP's retransmit timer: 1/8 for the round trip, 1/4 for its variation.
+        if (smoothedRtt < 0) {
+            smoothedRtt = roundTrip;
+            jitter = roundTrip / 2.0;
+        } else {
+            jitter += (Math.abs(roundTrip - smoothedRtt) - jitter) / 4;
+            smoothedRtt += (roundTrip - smoothedRtt) / 8;
+        }
+        serverTick = tick;
+        serverTickTime = t2;
+    }
+
+    public synchronized boolean isSynced() {
+        return count > 0;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    // Our clock plus the offset: server clock minus ours.
+    public synchronized long serverTime(long now) {
+        return now + offset;
+    }
+
+    // The tick the server is on now, counted forward from the last pong at Config.SERVER_TICK_RATE.
+    public synchronized int serverTick(long now) {
+        if (count == 0) {
+            return 0;
+        }
+        return serverTick + (int) ((serverTime(now) - serverTickTime) * Config.SERVER_TICK_RATE / 1000);
+    }
+
+    public synchronized int getRtt() {
+        return (int) Math.round(Math.max(0, smoothedRtt));
+    }
+
+    public synchronized int getJitter() {
+        return (int) Math.round(jitter);
+    }
+
+    public synchronized String summary() {
+        if (count == 0) {
+            return "clock: unsynced";
+        }
+        return String.format("rtt %dms +/- %dms | offset %+dms | tick %d", getRtt(), getJitter(), offset,
+                serverTick(System.currentTimeMillis()));
+    }
+}
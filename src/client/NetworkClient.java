@@ -3,6 +3,11 @@ package client;
 import java.awt.Color;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.*;
@@ -10,8 +15,7 @@ import shared.*;
 
 public class NetworkClient {
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private MessageStream stream;
     private ClientGamePanel gamePanel;
     private BlockingQueue<NetworkMessage> messageQueue;
     private boolean connected = false;
@@ -20,7 +24,18 @@ public class NetworkClient {
     private ExecutorService executor;
     private AtomicInteger sequenceCounter = new AtomicInteger(0);
     private long lastPingTime = 0;
-    private long ping = 0;
+    private final ClockSync clock = new ClockSync();
+    private final WorldSnapshot[] receivedSnapshots = new WorldSnapshot[Config.SNAPSHOT_HISTORY * 2];
+    private int lastSnapshotTick = -1;
+    // Who each server handle is, learned from join messages; updates only carry the handle.
+    private final Map<Integer, PlayerData> knownPlayers = new HashMap<>();
+    private volatile int localHandle = 0;
+    private DatagramSocket udpSocket;
+    private volatile boolean udpReady = false;
+    private int udpToken;
+    private ReliableEndpoint endpoint;
+    // UDP-only: the server's address cookie, echoed in every packet; 0 until the first challenge arrives.
+    private volatile int udpCookie = 0;
     public PlayerData lastPlayerData = null;
 
     public NetworkClient(ClientGamePanel gamePanel) {
@@ -30,14 +45,17 @@ public class NetworkClient {
     }
 
     public void connect(String host, int port) {
+        if ("udp".equalsIgnoreCase(Config.CLIENT_TRANSPORT)) {
+            connectUdp(host, port);
+            return;
+        }
         try {
             socket = new Socket(host, port);
             socket.setKeepAlive(true);
             socket.setTcpNoDelay(true);
             socket.setSoTimeout(5000);
             
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
+            stream = MessageStream.connect(socket, MessageStream.defaultMode());
             connected = true;
 
        
@@ -60,19 +78,39 @@ public class NetworkClient {
         }
     }
 
-    public void disconnect() {
-        connected = false;
+    // UDP-only transport: a single datagram socket carries everything, reliable events included.
+    private void connectUdp(String host, int port) {
         try {
-            if (in != null) {
-                in.close();
-            }
+            udpSocket = new DatagramSocket();
+            udpSocket.connect(InetAddress.getByName(host), port);
+            udpSocket.setSoTimeout(1000);
+            endpoint = new ReliableEndpoint();
+            connected = true;
+
+            receiveThread = new Thread(this::receiveDatagrams, "NetworkClient-Receive");
+            receiveThread.setDaemon(true);
+            receiveThread.start();
+
+            sendThread = new Thread(this::sendPackets, "NetworkClient-Send");
+            sendThread.setDaemon(true);
+            sendThread.start();
+
+            executor.submit(this::pingLoop);
+
+            System.out.println("Connected to server over UDP at " + host + ":" + port);
         } catch (IOException e) {
-            // Ignore
+            System.err.println("Could not open UDP socket to " + host + ":" + port + " - " + e.getMessage());
+        }
+    }
+
+    public void disconnect() {
+        connected = false;
+        if (udpSocket != null) {
+            udpSocket.close();
         }
-        
         try {
-            if (out != null) {
-                out.close();
+            if (stream != null) {
+                stream.close();
             }
         } catch (IOException e) {
             // Ignore
@@ -106,12 +144,9 @@ public class NetworkClient {
     private void receiveMessages() {
         while (connected) {
             try {
-                Object received = in.readObject();
-                if (received instanceof NetworkMessage) {
-                    NetworkMessage message = (NetworkMessage) received;
+                NetworkMessage message = stream.readMessage();
+                if (message != null) {
                     processMessage(message);
-                } else {
-                    System.err.println("Received non-NetworkMessage object: " + received.getClass());
                 }
             } catch (java.net.SocketException e) {
                 if (connected) {
@@ -152,16 +187,151 @@ public class NetworkClient {
         }
     }
 
+    // Alongside TCP, datagrams from the server are single frames; in UDP-only mode they are reliable packets.
+    private void receiveDatagrams() {
+        byte[] buffer = new byte[65536];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (connected && !udpSocket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                udpSocket.receive(packet);
+                if (endpoint == null) {
+                    processMessage(NetworkCodec.decodeFrame(buffer, packet.getOffset(), packet.getLength()));
+                    continue;
+                }
+                if (packet.getLength() == 4) {
+                    udpCookie = ByteBuffer.wrap(buffer, packet.getOffset(), 4).getInt();
+                    continue;
+                }
+                for (NetworkMessage message : endpoint.receivePacket(buffer, packet.getOffset(), packet.getLength(), System.currentTimeMillis())) {
+                    processMessage(message);
+                }
+            } catch (java.net.SocketTimeoutException e) {
+                if (endpoint != null && System.currentTimeMillis() - endpoint.getLastReceiveTime() > 5000) {
+                    System.err.println("Connection lost: no packets from server");
+                    showConnectionError("Network Error", "No packets from server for 5 seconds");
+                    connected = false;
+                }
+            } catch (IOException e) {
+                if (connected && !udpSocket.isClosed()) {
+                    System.err.println("Dropping datagram: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void openUdpChannel(int token) {
+        if (udpSocket != null || stream.getMode() != MessageStream.MODE_BINARY) {
+            return;
+        }
+        try {
+            udpSocket = new DatagramSocket();
+            udpSocket.connect(socket.getInetAddress(), socket.getPort());
+            udpSocket.setSoTimeout(1000);
+        } catch (IOException e) {
+            System.err.println("UDP unavailable, staying on TCP: " + e.getMessage());
+            udpSocket = null;
+            return;
+        }
+        udpToken = token;
+
+        Thread udpThread = new Thread(this::receiveDatagrams, "NetworkClient-Udp");
+        udpThread.setDaemon(true);
+        udpThread.start();
+
+        // Keep knocking until the server confirms over TCP that it has seen our address.
+        executor.submit(() -> {
+            for (int attempt = 0; attempt < 20 && connected && !udpReady; attempt++) {
+                sendDatagram(new NetworkMessage(NetworkMessage.UDP_TOKEN, "", null, token));
+                try {
+                    Thread.sleep(250);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (!udpReady) {
+                System.err.println("No UDP reply from server, staying on TCP");
+            }
+        });
+    }
+
+    private boolean sendDatagram(NetworkMessage message) {
+        byte[] frame = NetworkCodec.encodeFrame(message);
+        if (frame.length > Config.UDP_MAX_PAYLOAD) {
+            return false;
+        }
+        byte[] datagram = new byte[frame.length + 4];
+        datagram[0] = (byte) (udpToken >>> 24);
+        datagram[1] = (byte) (udpToken >>> 16);
+        datagram[2] = (byte) (udpToken >>> 8);
+        datagram[3] = (byte) udpToken;
+        System.arraycopy(frame, 0, datagram, 4, frame.length);
+        try {
+            udpSocket.send(new DatagramPacket(datagram, datagram.length));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not send datagram: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // UDP-only send loop: batches whatever is queued into as few packets as fit, and otherwise wakes up to send acks and resends.
+    private void sendPackets() {
+        while (connected) {
+            try {
+                NetworkMessage message = messageQueue.poll(Config.UDP_SERVICE_INTERVAL, TimeUnit.MILLISECONDS);
+                List<byte[]> unreliable = new ArrayList<>();
+                while (message != null) {
+                    byte[] frame = NetworkCodec.encodeFrame(message);
+                    if (NetworkMessage.isDroppable(message.type)) {
+                        unreliable.add(frame);
+                    } else {
+                        endpoint.queueReliable(frame);
+                    }
+                    message = messageQueue.poll();
+                }
+                long now = System.currentTimeMillis();
+                if (unreliable.isEmpty() && !endpoint.hasWork(now)) {
+                    continue;
+                }
+                do {
+                    byte[] body = endpoint.buildPacket(unreliable, Config.UDP_MAX_PAYLOAD, now);
+                    byte[] datagram = new byte[body.length + 8];
+                    int cookie = udpCookie;
+                    datagram[4] = (byte) (cookie >>> 24);
+                    datagram[5] = (byte) (cookie >>> 16);
+                    datagram[6] = (byte) (cookie >>> 8);
+                    datagram[7] = (byte) cookie;
+                    System.arraycopy(body, 0, datagram, 8, body.length);
+                    udpSocket.send(new DatagramPacket(datagram, datagram.length));
+                } while (!unreliable.isEmpty());
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("Could not send packet: " + e.getMessage());
+            }
+        }
+    }
+
+    // Everything queued by the time the thread wakes up goes out with a single flush.
     private void sendMessages() {
+        List<NetworkMessage> batch = new ArrayList<>();
         while (connected) {
             try {
-                NetworkMessage message = messageQueue.take();
-                if (out != null) {
-                    synchronized (out) {
-                        out.writeObject(message);
-                        out.flush();
+                batch.add(messageQueue.take());
+                if (Config.SEND_BATCH_DELAY_MS > 0) {
+                    Thread.sleep(Config.SEND_BATCH_DELAY_MS);
+                }
+                messageQueue.drainTo(batch);
+                if (stream != null) {
+                    synchronized (stream) {
+                        for (NetworkMessage message : batch) {
+                            stream.writeMessage(message);
+                        }
+                        stream.flush();
                     }
                 }
+                batch.clear();
             } catch (InterruptedException e) {
                 break;
             } catch (IOException e) {
@@ -172,13 +342,17 @@ public class NetworkClient {
         }
     }
 
+    // Pings quickly until the clock estimate has a full window of samples, then once a second.
     private void pingLoop() {
         while (connected) {
             try {
-                Thread.sleep(1000);
-                if (connected && System.currentTimeMillis() - lastPingTime > 1000) {
-                    sendMessage(new NetworkMessage(NetworkMessage.PING, "", "ping"));
-                    lastPingTime = System.currentTimeMillis();
+                Thread.sleep(Config.TIME_SYNC_FAST_INTERVAL_MS);
+                long now = System.currentTimeMillis();
+                long interval = clock.getSampleCount() < Config.TIME_SYNC_FAST_SAMPLES
+                        ? Config.TIME_SYNC_FAST_INTERVAL_MS : Config.TIME_SYNC_INTERVAL_MS;
+                if (connected && now - lastPingTime >= interval) {
+                    sendMessage(new NetworkMessage(NetworkMessage.PING, "", new TimeSync(now)));
+                    lastPingTime = now;
                 }
             } catch (InterruptedException e) {
                 break;
@@ -186,11 +360,21 @@ public class NetworkClient {
         }
     }
 
-    private void processMessage(NetworkMessage message) {
+    private synchronized void processMessage(NetworkMessage message) {
         switch (message.type) {
+            case NetworkMessage.UDP_TOKEN:
+                openUdpChannel(message.sequence);
+                break;
+
+            case NetworkMessage.UDP_READY:
+                udpReady = true;
+                System.out.println("UDP channel ready");
+                break;
+
             case NetworkMessage.PLAYER_JOIN:
                 if (message.data instanceof PlayerData) {
                     PlayerData playerData = (PlayerData) message.data;
+                    resolvePlayer(playerData);
                     if (!playerData.id.equals(gamePanel.localPlayer.playerId)) {
                         gamePanel.addPlayer(playerData);
                     }
@@ -200,6 +384,7 @@ public class NetworkClient {
             case NetworkMessage.PLAYER_LEAVE:
                 if (message.data instanceof String) {
                     String playerId = (String) message.data;
+                    knownPlayers.values().removeIf(known -> known.id.equals(playerId));
                     gamePanel.removePlayer(playerId);
                 }
                 break;
@@ -207,6 +392,9 @@ public class NetworkClient {
             case NetworkMessage.PLAYER_UPDATE:
                 if (message.data instanceof PlayerData) {
                     PlayerData updateData = (PlayerData) message.data;
+                    if (!resolvePlayer(updateData)) {
+                        break;
+                    }
                     if (updateData.id.equals(gamePanel.localPlayer.playerId)) {
                         lastPlayerData = updateData;
                         int oldHp = gamePanel.localPlayer.hp;
@@ -229,6 +417,40 @@ public class NetworkClient {
                 }
                 break;
 
+            case NetworkMessage.GAME_STATE:
+                if (message.data instanceof GameStateData) {
+                    GameStateData state = (GameStateData) message.data;
+                    for (PlayerData playerData : state.snapshot.players) {
+                        resolvePlayer(playerData);
+                        if (!playerData.id.equals(gamePanel.localPlayer.playerId) && !gamePanel.hasPlayer(playerData.id)) {
+                            gamePanel.addPlayer(playerData);
+                        }
+                    }
+                    if (state.weapons != null) {
+                        gamePanel.setWeapons(state.weapons);
+                    }
+                    applySnapshot(state.snapshot);
+                }
+                break;
+
+            case NetworkMessage.SNAPSHOT:
+                if (message.data instanceof WorldSnapshot) {
+                    applySnapshot((WorldSnapshot) message.data);
+                }
+                break;
+
+            case NetworkMessage.SNAPSHOT_DELTA:
+                if (message.data instanceof SnapshotDelta) {
+                    SnapshotDelta delta = (SnapshotDelta) message.data;
+                    WorldSnapshot baseline = receivedSnapshots[delta.baselineTick % receivedSnapshots.length];
+                    if (baseline == null || baseline.tick != delta.baselineTick) {
+                        System.err.println("Missing snapshot baseline " + delta.baselineTick);
+                        break;
+                    }
+                    applySnapshot(delta.applyTo(baseline));
+                }
+                break;
+
             case NetworkMessage.BULLET_SPAWN:
                 if (message.data instanceof BulletData) {
                     BulletData bulletData = (BulletData) message.data;
@@ -236,6 +458,19 @@ public class NetworkClient {
                 }
                 break;
 
+            case NetworkMessage.BULLET_HIT:
+                if (message.data instanceof BulletHit) {
+                    BulletHit hit = (BulletHit) message.data;
+                    String hitPlayerId = null;
+                    if (hit.kind == BulletHit.PLAYER) {
+                        PlayerData known = knownPlayers.get(hit.target);
+                        hitPlayerId = hit.target == localHandle ? gamePanel.localPlayer.playerId
+                                : known != null ? known.id : null;
+                    }
+                    gamePanel.bulletHit(hit, hitPlayerId);
+                }
+                break;
+
             case NetworkMessage.PLAYER_HIT:
                 if (message.data instanceof String[]) {
                     String[] hitData = (String[]) message.data;
@@ -251,8 +486,23 @@ public class NetworkClient {
                 }
                 break;
 
+            case NetworkMessage.CHICKEN_STATE:
+                if (message.data instanceof ChickenData[]) {
+                    gamePanel.updateChickens((ChickenData[]) message.data);
+                }
+                break;
+
+            // The server measures its own round trip to us for lag compensation; the nonce goes straight back.
+            case NetworkMessage.PING:
+                sendMessage(new NetworkMessage(NetworkMessage.PONG, "", null, message.sequence));
+                break;
+
             case NetworkMessage.PONG:
-                ping = System.currentTimeMillis() - lastPingTime;
+                if (message.data instanceof TimeSync) {
+                    TimeSync sync = (TimeSync) message.data;
+                    clock.addSample(sync.clientSendTime, sync.serverReceiveTime, message.timestamp,
+                            System.currentTimeMillis(), sync.serverTick);
+                }
                 break;
         }
     }
@@ -261,8 +511,17 @@ public class NetworkClient {
         sendMessage(new NetworkMessage(NetworkMessage.PLAYER_JOIN, playerData.id, playerData, sequenceCounter.incrementAndGet()));
     }
 
+    // Once the server has assigned a handle the update no longer needs to carry the id or name.
     public void sendPlayerUpdate(PlayerData playerData) {
-        sendMessage(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, playerData.id, playerData, sequenceCounter.incrementAndGet()));
+        playerData.handle = localHandle;
+        sendMessage(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, "", playerData, sequenceCounter.incrementAndGet()));
+    }
+
+    public void sendInputs(List<InputCommand> inputs) {
+        if (inputs.isEmpty()) {
+            return;
+        }
+        sendMessage(new NetworkMessage(NetworkMessage.INPUT, "", inputs.toArray(new InputCommand[0]), sequenceCounter.incrementAndGet()));
     }
 
     private long lastBulletTime = 0;
@@ -274,19 +533,73 @@ public class NetworkClient {
         }
         lastBulletTime = currentTime;
         
-        sendMessage(new NetworkMessage(NetworkMessage.BULLET_SPAWN, gamePanel.localPlayer.playerId, bulletData, sequenceCounter.incrementAndGet()));
+        sendMessage(new NetworkMessage(NetworkMessage.BULLET_SPAWN, "", bulletData, sequenceCounter.incrementAndGet()));
     }
     
-    public void sendPlayerHit(String playerId, int damage) {
-        String[] hitData = { playerId, String.valueOf(damage) };
-        sendMessage(new NetworkMessage(NetworkMessage.PLAYER_HIT, gamePanel.localPlayer.playerId, hitData, sequenceCounter.incrementAndGet()));
+    // viewTime is the server time of the positions the hit was decided against; see LagCompensator.
+    public void sendPlayerHit(String playerId, int damage, long viewTime, double x, double y) {
+        HitReport hit = new HitReport(playerId, damage, viewTime, x, y);
+        sendMessage(new NetworkMessage(NetworkMessage.PLAYER_HIT, gamePanel.localPlayer.playerId, hit, sequenceCounter.incrementAndGet()));
     }
     
     public void sendChickenUpdate(ChickenData chickenData) {
         sendMessage(new NetworkMessage(NetworkMessage.CHICKEN_UPDATE, gamePanel.localPlayer.playerId, chickenData, sequenceCounter.incrementAndGet()));
     }
 
+    private void applySnapshot(WorldSnapshot snapshot) {
+        // Snapshots can arrive out of order over UDP; anything older than what is on screen is useless.
+        if (snapshot.tick <= lastSnapshotTick) {
+            return;
+        }
+        lastSnapshotTick = snapshot.tick;
+        for (PlayerData playerData : snapshot.players) {
+            resolvePlayer(playerData);
+        }
+        receivedSnapshots[snapshot.tick % receivedSnapshots.length] = snapshot;
+        sendMessage(new NetworkMessage(NetworkMessage.SNAPSHOT_ACK, "", null, snapshot.tick));
+        gamePanel.observeServerTime(snapshot.serverTime);
+        gamePanel.retainInterest(snapshot);
+
+        // The local player's hp still arrives through PLAYER_UPDATE events; its position is reconciled against the server's.
+        for (PlayerData playerData : snapshot.players) {
+            if (playerData.id.isEmpty()) {
+                continue;
+            }
+            if (!playerData.id.equals(gamePanel.localPlayer.playerId)) {
+                gamePanel.updatePlayer(playerData, snapshot.serverTime);
+            } else if (Config.USE_INPUT_COMMANDS) {
+                gamePanel.reconcileLocalPlayer(playerData);
+            }
+        }
+        gamePanel.updateChickens(snapshot.chickens, snapshot.serverTime);
+    }
+
+    // Records the identity of players that arrive with one and fills it in for those that only carry a handle.
+    // Returns false for a handle this client has not been introduced to yet.
+    private boolean resolvePlayer(PlayerData playerData) {
+        if (playerData.id != null && !playerData.id.isEmpty()) {
+            if (playerData.handle != 0) {
+                PlayerData identity = new PlayerData();
+                identity.copyIdentity(playerData);
+                knownPlayers.put(playerData.handle, identity);
+                if (playerData.id.equals(gamePanel.localPlayer.playerId)) {
+                    localHandle = playerData.handle;
+                }
+            }
+            return true;
+        }
+        PlayerData known = knownPlayers.get(playerData.handle);
+        if (known == null) {
+            return false;
+        }
+        playerData.copyIdentity(known);
+        return true;
+    }
+
     private void sendMessage(NetworkMessage message) {
+        if (connected && udpReady && NetworkMessage.isDroppable(message.type) && sendDatagram(message)) {
+            return;
+        }
         if (connected && !messageQueue.offer(message)) {
             System.err.println("Message queue full, dropping message");
         }
@@ -296,7 +609,18 @@ public class NetworkClient {
         return connected;
     }
 
+    public String getTransportStats() {
+        if (endpoint != null) {
+            return "udp | " + endpoint.summary();
+        }
+        return udpReady ? "tcp+udp" : "tcp";
+    }
+
     public long getPing() {
-        return ping;
+        return clock.getRtt();
+    }
+
+    public ClockSync getClockSync() {
+        return clock;
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package client;
+
+import java.util.HashMap;
+import java.util.Map;
+import shared.*;
+
+// Timestamped position history for remote entities. Entities are drawn Config.INTERPOLATION_DELAY_MS
+// in the past, between two states the server actually sent, so packet timing does not show up as jitter.
+public class SnapshotBuffer {
+    private static final int CAPACITY = 32;
+    // A bigger jump than a dash can make between two samples is a respawn; it snaps instead of sliding.
+    private static final double TELEPORT_DISTANCE = Config.DASH_DISTANCE * 2;
+
+    private final Map<Object, Track> tracks = new HashMap<>();
+    private double clockOffset;
+    private boolean haveClock = false;
+    private ClockSync clock;
+
+    private static class Track {
+        final long[] times = new long[CAPACITY];
+        final double[] xs = new double[CAPACITY];
+        final double[] ys = new double[CAPACITY];
+        final double[] angles = new double[CAPACITY];
+        int count = 0;
+        int head = 0;
+
+        int index(int age) {
+            return (head - 1 - age + CAPACITY) % CAPACITY;
+        }
+    }
+
+    // Once it has a sample, the PING/PONG clock gives the server time, since it corrects for the one-way
+    // delay; until then it comes from snapshot stamps.
+    public synchronized void useClock(ClockSync clock) {
+        this.clock = clock;
+    }
+
+    // Server minus local clock, taken from the snapshots that arrived fastest. Late packets never pull it
+    // down; it only relaxes slowly so the two clocks are allowed to drift.
+    public synchronized void observeServerTime(long serverTime, long now) {
+        double sample = serverTime - now;
+        if (!haveClock || sample > clockOffset) {
+            clockOffset = sample;
+            haveClock = true;
+        } else {
+            clockOffset -= 0.1;
+        }
+    }
+
+    public synchronized long estimateServerTime(long now) {
+        if (clock != null && clock.isSynced()) {
+            return clock.serverTime(now);
+        }
+        return now + (long) clockOffset;
+    }
+
+    public synchronized long renderTime(long now) {
+        return estimateServerTime(now) - Config.INTERPOLATION_DELAY_MS;
+    }
+
+    public synchronized void push(Object key, long time, double x, double y, double angle) {
+        Track track = tracks.get(key);
+        if (track == null) {
+            track = new Track();
+            tracks.put(key, track);
+        }
+        if (track.count > 0) {
+            int last = track.index(0);
+            if (time < track.times[last]) {
+                return;
+            }
+            if (Math.hypot(x - track.xs[last], y - track.ys[last]) > TELEPORT_DISTANCE) {
+                track.count = 0;
+            } else if (time == track.times[last]) {
+                track.head = last;
+                track.count--;
+            }
+        }
+        track.times[track.head] = time;
+        track.xs[track.head] = x;
+        track.ys[track.head] = y;
+        track.angles[track.head] = angle;
+        track.head = (track.head + 1) % CAPACITY;
+        track.count = Math.min(track.count + 1, CAPACITY);
+    }
+
+    // Fills out with x, y and angle at the given server time. Past the newest sample the last velocity
+    // is carried forward for at most Config.MAX_EXTRAPOLATION_MS, then the entity holds still.
+    public synchronized boolean sample(Object key, long time, double[] out) {
+        Track track = tracks.get(key);
+        if (track == null || track.count == 0) {
+            return false;
+        }
+        int newest = track.index(0);
+        if (time >= track.times[newest]) {
+            out[0] = track.xs[newest];
+            out[1] = track.ys[newest];
+            out[2] = track.angles[newest];
+            if (track.count > 1) {
+                int previous = track.index(1);
+                long span = track.times[newest] - track.times[previous];
+                long ahead = Math.min(time - track.times[newest], Config.MAX_EXTRAPOLATION_MS);
+                if (span > 0 && ahead > 0) {
+                    double t = (double) ahead / span;
+                    out[0] += (track.xs[newest] - track.xs[previous]) * t;
+                    out[1] += (track.ys[newest] - track.ys[previous]) * t;
+                }
+            }
+            return true;
+        }
+        for (int age = 1; age < track.count; age++) {
+            int older = track.index(age);
+            if (track.times[older] <= time) {
+                int newer = track.index(age - 1);
+                double t = (double) (time - track.times[older]) / (track.times[newer] - track.times[older]);
+                out[0] = track.xs[older] + (track.xs[newer] - track.xs[older]) * t;
+                out[1] = track.ys[older] + (track.ys[newer] - track.ys[older]) * t;
+                out[2] = lerpAngle(track.angles[older], track.angles[newer], t);
+                return true;
+            }
+        }
+        int oldest = track.index(track.count - 1);
+        out[0] = track.xs[oldest];
+        out[1] = track.ys[oldest];
+        out[2] = track.angles[oldest];
+        return true;
+    }
+
+    public synchronized void remove(Object key) {
+        tracks.remove(key);
+    }
+
+    private static double lerpAngle(double from, double to, double t) {
+        double diff = Math.atan2(Math.sin(to - from), Math.cos(to - from));
+        return from + diff * t;
+    }
+}
@@ -0,0 +1,397 @@
+package server;
+
+import java.awt.geom.Rectangle2D;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import shared.*;
+
+public abstract class ClientConnection {
+    protected final GameServer server;
+    protected String playerId;
+    protected int handle;
+    protected volatile boolean connected = true;
+    private final WorldSnapshot[] sentSnapshots = new WorldSnapshot[Config.SNAPSHOT_HISTORY];
+    private volatile int ackedTick = -1;
+    private volatile SocketAddress udpAddress;
+    private int udpToken;
+    private final Map<Integer, Integer> lastDatagramSequence = new HashMap<>();
+    private volatile boolean slowClient = false;
+    private final Queue<InputCommand> pendingInputs = new ConcurrentLinkedQueue<>();
+    private int lastQueuedInput = 0;
+    private final PlayerMovement movement = new PlayerMovement();
+    private double inputAllowance = 0;
+    private long lastInputBudget = 0;
+    private long nextShotTime = 0;
+    private final InterestSet interest = new InterestSet();
+    private final PriorityScheduler scheduler = new PriorityScheduler();
+    private volatile WorldSnapshot lastSentSnapshot;
+    // Round trip from the server's own pings: the lowest of the last few, since a client can hold back its
+    // pongs but cannot answer a random nonce before the ping arrives. -1 until the first pong.
+    private volatile int rtt = -1;
+    private final long[] roundTrips = new long[Config.TIME_SYNC_FAST_SAMPLES];
+    private int roundTripCount = 0;
+    private int pingNonce = 0;
+    private long pingSentAt = 0;
+
+    protected ClientConnection(GameServer server) {
+        this.server = server;
+    }
+
+    public abstract void send(OutboundMessage message);
+
+    public void sendMessage(NetworkMessage message) {
+        send(new OutboundMessage(message));
+    }
+
+    // State that may be dropped or superseded; goes over UDP once the client has proven its address.
+    public void sendUnreliable(OutboundMessage message) {
+        SocketAddress address = udpAddress;
+        UdpGateway gateway = server.getUdpGateway();
+        if (address != null && gateway != null && message.frameBytes().length <= Config.UDP_MAX_PAYLOAD) {
+            if (gateway.send(address, message.frameBytes())) {
+                return;
+            }
+        }
+        send(message);
+    }
+
+    public abstract boolean isConnected();
+
+    // Object stream clients cannot read datagram frames.
+    protected boolean supportsUdp() {
+        return true;
+    }
+
+    private void offerUdpChannel() {
+        UdpGateway gateway = server.getUdpGateway();
+        if (gateway == null || !supportsUdp() || udpToken != 0) {
+            return;
+        }
+        udpToken = gateway.register(this);
+        sendMessage(new NetworkMessage(NetworkMessage.UDP_TOKEN, "", null, udpToken));
+    }
+
+    // Called on the UDP gateway thread; datagrams older than the newest one seen of the same type are dropped.
+    void onDatagram(NetworkMessage message, SocketAddress address) {
+        if (udpAddress == null) {
+            udpAddress = address;
+            sendMessage(new NetworkMessage(NetworkMessage.UDP_READY, "", null, udpToken));
+            System.out.println("UDP channel ready for " + playerId + " at " + address);
+        } else if (!udpAddress.equals(address)) {
+            udpAddress = address;
+        }
+        if (message.type == NetworkMessage.UDP_TOKEN || !isNewest(message)) {
+            return;
+        }
+        processMessage(message);
+    }
+
+    // Pings and pongs are matched by send time or nonce, not by order: the client's PING always has sequence 0
+    // and a PONG carries a random nonce, so every one of them has to get through.
+    protected boolean isNewest(NetworkMessage message) {
+        if (message.type == NetworkMessage.PING || message.type == NetworkMessage.PONG) {
+            return true;
+        }
+        Integer last = lastDatagramSequence.get(message.type);
+        if (last != null && message.sequence <= last) {
+            return false;
+        }
+        lastDatagramSequence.put(message.type, message.sequence);
+        return true;
+    }
+
+    // Called by queueing connections when their send queue passes Config.SEND_QUEUE_BUDGET.
+    protected void onQueueOverBudget(int depth) {
+        if (Config.DISCONNECT_SLOW_CLIENTS) {
+            System.err.println("Disconnecting slow client " + playerId + " (" + depth + " queued messages)");
+            closeSlowClient();
+        } else if (!slowClient) {
+            System.err.println("Client " + playerId + " is not keeping up (" + depth + " queued messages)");
+        }
+        slowClient = true;
+    }
+
+    protected void closeSlowClient() {
+    }
+
+    public boolean isSlowClient() {
+        return slowClient;
+    }
+
+    public String getQueueStats() {
+        return "-";
+    }
+
+    public String getTransportStats() {
+        return udpAddress != null ? "tcp+udp" : "tcp";
+    }
+
+    public InterestSet getInterest() {
+        return interest;
+    }
+
+    public PriorityScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public WorldSnapshot getLastSentSnapshot() {
+        return lastSentSnapshot;
+    }
+
+    public int getRtt() {
+        return rtt;
+    }
+
+    // Called on the game loop; pings quickly until a full window of samples is in, like the client does.
+    synchronized void pingIfDue(long now) {
+        long interval = roundTripCount < roundTrips.length ? Config.TIME_SYNC_FAST_INTERVAL_MS : Config.TIME_SYNC_INTERVAL_MS;
+        if (handle == 0 || now - pingSentAt < interval) {
+            return;
+        }
+        pingNonce = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+        pingSentAt = now;
+        sendMessage(new NetworkMessage(NetworkMessage.PING, "", null, pingNonce));
+    }
+
+    private synchronized void measureRoundTrip(int nonce, long now) {
+        if (nonce == 0 || nonce != pingNonce) {
+            return;
+        }
+        pingNonce = 0;
+        roundTrips[roundTripCount % roundTrips.length] = now - pingSentAt;
+        roundTripCount++;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < Math.min(roundTripCount, roundTrips.length); i++) {
+            best = Math.min(best, roundTrips[i]);
+        }
+        rtt = (int) best;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    // Input messages repeat recent commands, so anything already queued is skipped. At most a second's worth
+    // is held; past that the rest are dropped.
+    private synchronized void queueInputs(InputCommand[] inputs) {
+        for (InputCommand input : inputs) {
+            if (input.sequence > lastQueuedInput && pendingInputs.size() < Config.FPS) {
+                pendingInputs.add(input);
+                lastQueuedInput = input.sequence;
+            }
+        }
+    }
+
+    boolean hasPendingInputs() {
+        return !pendingInputs.isEmpty();
+    }
+
+    // Called on the game loop. The server's position is the only one that counts; lastInput tells the client
+    // which of its predicted inputs this position already includes. Inputs are applied no faster than a client
+    // produces them in real time: the allowance grows by Config.FPS inputs per second of server time, banked up
+    // to Config.INPUT_BURST_MS so a late batch still plays out at once. Inputs sent ahead of real time wait in
+    // the queue, so sending them faster does not move faster.
+    void applyInputs(PlayerData player, List<Rectangle2D.Double> collisions, List<Rectangle2D.Double> blockers) {
+        long now = System.currentTimeMillis();
+        if (lastInputBudget != 0) {
+            inputAllowance = Math.min(Config.INPUT_BURST_MS * Config.FPS / 1000.0,
+                    inputAllowance + (now - lastInputBudget) * Config.FPS / 1000.0);
+        }
+        lastInputBudget = now;
+        InputCommand input;
+        while (inputAllowance >= 1 && (input = pendingInputs.poll()) != null) {
+            inputAllowance--;
+            player.lastInput = input.sequence;
+            if (player.hp <= 0) {
+                continue;
+            }
+            movement.x = (int) player.x;
+            movement.y = (int) player.y;
+            movement.apply(input, collisions, blockers);
+            player.x = movement.x;
+            player.y = movement.y;
+            player.angle = input.angle;
+            player.shooting = input.has(InputCommand.FIRE);
+            player.hasWeapon = input.has(InputCommand.ARMED);
+            player.reloading = input.has(InputCommand.RELOADING);
+            player.lastUpdate = System.currentTimeMillis();
+        }
+    }
+
+    // Only the game loop thread records snapshots, acks arrive from the connection's reader.
+    public void recordSnapshot(WorldSnapshot snapshot) {
+        sentSnapshots[snapshot.tick % sentSnapshots.length] = snapshot;
+        lastSentSnapshot = snapshot;
+    }
+
+    // Returns null when nothing has been acknowledged yet or the ack has fallen out of the history.
+    public WorldSnapshot getBaseline() {
+        int tick = ackedTick;
+        if (tick < 0) {
+            return null;
+        }
+        WorldSnapshot snapshot = sentSnapshots[tick % sentSnapshots.length];
+        return snapshot != null && snapshot.tick == tick ? snapshot : null;
+    }
+
+    // The client's weapon fires once per Config.PLAYER_SHOOT_DELAY frames. A shot that arrives early by up to
+    // Config.SHOT_JITTER_MS still counts, since the network can bunch two of them together.
+    private boolean allowShot(long now) {
+        if (now < nextShotTime - Config.SHOT_JITTER_MS) {
+            return false;
+        }
+        nextShotTime = Math.max(now, nextShotTime) + Config.PLAYER_SHOOT_DELAY * 1000L / Config.FPS;
+        return true;
+    }
+
+    private void acknowledgeSnapshot(int tick) {
+        if (tick > ackedTick) {
+            ackedTick = tick;
+        }
+    }
+
+    protected void processMessage(NetworkMessage message) {
+        try {
+      
+            // Hot-path messages leave the sender id empty; the connection already knows who it is.
+            if (playerId != null && (message.playerId == null || message.playerId.isEmpty())) {
+                message.playerId = playerId;
+            }
+            if (server.debugUI != null) {
+                server.debugUI.logNetworkMessage(message);
+            }
+            
+            switch (message.type) {
+                case NetworkMessage.PLAYER_JOIN:
+                    if (message.data instanceof PlayerData) {
+                        PlayerData playerData = (PlayerData) message.data;
+                        this.playerId = playerData.id;
+                        this.handle = server.addClient(playerId, this);
+                        playerData.handle = handle;
+                        server.addPlayer(playerData);
+                        offerUdpChannel();
+                        System.out.println("Player joined: " + playerData.name + " (ID: " + playerId + ")");
+                    } else {
+                        System.err.println("Invalid PLAYER_JOIN data type: " + message.data.getClass());
+                    }
+                    break;
+
+                case NetworkMessage.PLAYER_UPDATE:
+                    // With input commands the server simulates the player; a client-sent state would override it.
+                    if (Config.USE_INPUT_COMMANDS) {
+                        System.err.println("Ignoring PLAYER_UPDATE from " + playerId + " in input mode");
+                        break;
+                    }
+                    if (message.data instanceof PlayerData) {
+                        PlayerData updateData = (PlayerData) message.data;
+                        if (handle != 0) {
+                            server.updatePlayer(handle, updateData);
+                        }
+                        if (server.debugUI != null) {
+                            server.debugUI.logNetworkMessage(message);
+                        }
+                    } else {
+                        System.err.println("Invalid PLAYER_UPDATE data type: " + message.data.getClass());
+                    }
+                    break;
+
+                case NetworkMessage.INPUT:
+                    if (message.data instanceof InputCommand[]) {
+                        queueInputs((InputCommand[]) message.data);
+                    }
+                    break;
+
+                case NetworkMessage.BULLET_SPAWN:
+                    if (message.data instanceof BulletData) {
+                        BulletData bulletData = (BulletData) message.data;
+                        if (!server.clampShotOrigin(bulletData, handle) || !allowShot(System.currentTimeMillis())) {
+                            System.err.println("Ignoring BULLET_SPAWN from " + playerId);
+                            break;
+                        }
+                        bulletData.id = server.nextBulletHandle();
+                        server.broadcastToAll(
+                                new NetworkMessage(NetworkMessage.BULLET_SPAWN, "", bulletData, server.messageCounter.incrementAndGet()));
+                        if (server.debugUI != null) {
+                            server.debugUI.logBulletSpawn();
+                        }
+
+                        if (Config.USE_SERVER_PROJECTILES) {
+                            server.spawnProjectile(bulletData, handle, rtt);
+                            break;
+                        }
+                        for (ChickenData chicken : server.chickens.values()) {
+                            if (chicken != null && chicken.hp > 0) {
+                                double distance = Math.sqrt(Math.pow(bulletData.x - chicken.x, 2) + Math.pow(bulletData.y - chicken.y, 2));
+                                if (distance < 30) {
+                                    server.damageChicken(chicken, Config.BULLET_DAMAGE);
+                                    break;
+                                }
+                            }
+                        }
+                    } else {
+                        System.err.println("Invalid BULLET_SPAWN data type: " + message.data.getClass());
+                    }
+                    break;
+
+                case NetworkMessage.PLAYER_HIT:
+                    if (message.data instanceof HitReport) {
+                        server.handleHitReport((HitReport) message.data, handle, rtt);
+                    } else if (Config.USE_LAG_COMPENSATION && message.data instanceof String[]) {
+                        System.err.println("Ignoring PLAYER_HIT without a hit position from " + playerId);
+                    } else if (message.data instanceof String[]) {
+                        String[] hitData = (String[]) message.data;
+                        String hitPlayerId = hitData[0];
+                        int damage = Integer.parseInt(hitData[1]);
+                        server.handlePlayerHit(hitPlayerId, damage, handle);
+                    } else {
+                        System.err.println("Invalid PLAYER_HIT data type: " + message.data.getClass());
+                    }
+                    break;
+
+                case NetworkMessage.PING:
+                    if (message.data instanceof TimeSync) {
+                        TimeSync sync = (TimeSync) message.data;
+                        sync.serverReceiveTime = System.currentTimeMillis();
+                        sync.serverTick = server.getTick();
+                        sendMessage(new NetworkMessage(NetworkMessage.PONG, "", sync, message.sequence));
+                    } else {
+                        sendMessage(new NetworkMessage(NetworkMessage.PONG, "", "pong", message.sequence));
+                    }
+                    break;
+
+                case NetworkMessage.PONG:
+                    measureRoundTrip(message.sequence, System.currentTimeMillis());
+                    break;
+
+                case NetworkMessage.SNAPSHOT_ACK:
+                    acknowledgeSnapshot(message.sequence);
+                    break;
+
+            }
+        } catch (Exception e) {
+            System.err.println("Error processing message: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    protected void handleDisconnect() {
+        connected = false;
+        UdpGateway gateway = server.getUdpGateway();
+        if (gateway != null && udpToken != 0) {
+            gateway.unregister(udpToken);
+        }
+        if (playerId != null && server.removeClient(handle, this)) {
+            server.broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_LEAVE, playerId, playerId, server.messageCounter.incrementAndGet()));
+            System.out.println("Player left game: " + playerId);
+        }
+    }
+}
@@ -2,23 +2,26 @@ package server;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import shared.*;
 
-public class ClientHandler implements Runnable {
+public class ClientHandler extends ClientConnection implements Runnable {
+    public static final AtomicInteger activeThreads = new AtomicInteger(0);
+
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
-    private GameServer server;
-    private String playerId;
-    private boolean connected = true;
-    private BlockingQueue<NetworkMessage> sendQueue;
+    private MessageStream stream;
+    // A lock instead of synchronized so blocking writes don't pin virtual threads to their carrier.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final OutboundQueue sendQueue = new OutboundQueue();
     private Thread sendThread;
 
     public ClientHandler(Socket socket, GameServer server) {
+        super(server);
         this.socket = socket;
-        this.server = server;
-        this.sendQueue = new LinkedBlockingQueue<>();
         try {
             socket.setKeepAlive(true);
             socket.setTcpNoDelay(true);
@@ -30,25 +33,27 @@ public class ClientHandler implements Runnable {
 
     @Override
     public void run() {
+        activeThreads.incrementAndGet();
         try {
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
-
-     
-            sendThread = new Thread(this::sendMessages, "ClientHandler-Send-" + socket.getInetAddress());
-            sendThread.setDaemon(true);
+            stream = MessageStream.accept(socket);
+
+            String sendThreadName = "ClientHandler-Send-" + socket.getInetAddress();
+            if (GameServer.isVirtualThreadMode()) {
+                sendThread = Thread.ofVirtual().name(sendThreadName).unstarted(this::sendMessages);
+            } else {
+                sendThread = new Thread(this::sendMessages, sendThreadName);
+                sendThread.setDaemon(true);
+            }
             sendThread.start();
 
-            System.out.println("Client connected: " + socket.getInetAddress());
+            System.out.println("Client connected: " + socket.getInetAddress()
+                    + (stream.getMode() == MessageStream.MODE_BINARY ? " (binary)" : " (object)"));
 
             while (connected) {
                 try {
-                    Object received = in.readObject();
-                    if (received instanceof NetworkMessage) {
-                        NetworkMessage message = (NetworkMessage) received;
+                    NetworkMessage message = stream.readMessage();
+                    if (message != null) {
                         processMessage(message);
-                    } else {
-                        System.err.println("Received non-NetworkMessage object: " + received.getClass());
                     }
                 } catch (ClassNotFoundException e) {
                     System.err.println("Invalid data received: " + e.getMessage());
@@ -67,19 +72,45 @@ public class ClientHandler implements Runnable {
             e.printStackTrace();
         } finally {
             cleanup();
+            activeThreads.decrementAndGet();
         }
     }
 
     private void sendMessages() {
+        activeThreads.incrementAndGet();
+        try {
+            sendLoop();
+        } finally {
+            activeThreads.decrementAndGet();
+        }
+    }
+
+    // Everything queued by the time the thread wakes up goes out with a single flush.
+    private void sendLoop() {
+        List<OutboundMessage> batch = new ArrayList<>();
         while (connected) {
             try {
-                NetworkMessage message = sendQueue.take();
-                if (out != null) {
-                    synchronized (out) {
-                        out.writeObject(message);
-                        out.flush();
+                batch.add(sendQueue.take());
+                if (Config.SEND_BATCH_DELAY_MS > 0) {
+                    Thread.sleep(Config.SEND_BATCH_DELAY_MS);
+                }
+                sendQueue.drainTo(batch);
+                if (stream != null) {
+                    writeLock.lock();
+                    try {
+                        for (OutboundMessage message : batch) {
+                            if (stream.getMode() == MessageStream.MODE_BINARY) {
+                                stream.writeFrame(message.frameBytes());
+                            } else {
+                                stream.writeMessage(message.message);
+                            }
+                        }
+                        stream.flush();
+                    } finally {
+                        writeLock.unlock();
                     }
                 }
+                batch.clear();
             } catch (InterruptedException e) {
                 break;
             } catch (IOException e) {
@@ -90,113 +121,46 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private void processMessage(NetworkMessage message) {
-        try {
-      
-            if (server.debugUI != null) {
-                server.debugUI.logNetworkMessage(message);
-            }
-            
-            switch (message.type) {
-                case NetworkMessage.PLAYER_JOIN:
-                    if (message.data instanceof PlayerData) {
-                        PlayerData playerData = (PlayerData) message.data;
-                        this.playerId = playerData.id;
-                        server.addClient(playerId, this);
-                        server.addPlayer(playerData);
-                        System.out.println("Player joined: " + playerData.name + " (ID: " + playerId + ")");
-                    } else {
-                        System.err.println("Invalid PLAYER_JOIN data type: " + message.data.getClass());
-                    }
-                    break;
-
-                case NetworkMessage.PLAYER_UPDATE:
-                    if (message.data instanceof PlayerData) {
-                        PlayerData updateData = (PlayerData) message.data;
-                        server.updatePlayer(updateData);
-                        if (server.debugUI != null) {
-                            server.debugUI.logNetworkMessage(message);
-                        }
-                    } else {
-                        System.err.println("Invalid PLAYER_UPDATE data type: " + message.data.getClass());
-                    }
-                    break;
-
-                case NetworkMessage.BULLET_SPAWN:
-                    if (message.data instanceof BulletData) {
-                        BulletData bulletData = (BulletData) message.data;
-                        server.broadcastToAll(
-                                new NetworkMessage(NetworkMessage.BULLET_SPAWN, bulletData.id, bulletData, server.messageCounter.incrementAndGet()));
-                        if (server.debugUI != null) {
-                            server.debugUI.logBulletSpawn();
-                        }
-                        
-                        for (ChickenData chicken : server.chickens.values()) {
-                            if (chicken != null && chicken.hp > 0) {
-                                double distance = Math.sqrt(Math.pow(bulletData.x - chicken.x, 2) + Math.pow(bulletData.y - chicken.y, 2));
-                                if (distance < 30) {
-                                    chicken.hp -= Config.BULLET_DAMAGE;
-                                    chicken.isIdle = false;
-                                    chicken.isHit = true;
-                                    chicken.currentFrame = 0;
-                                    server.debugUI.logMessage("Chicken " + chicken.id + " hit! HP: " + chicken.hp + " Distance: " + distance);
-                                    if (chicken.hp <= 0) {
-                                        server.debugUI.logMessage("Chicken " + chicken.id + " died!");
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                    } else {
-                        System.err.println("Invalid BULLET_SPAWN data type: " + message.data.getClass());
-                    }
-                    break;
-
-                case NetworkMessage.PLAYER_HIT:
-                    if (message.data instanceof String[]) {
-                        String[] hitData = (String[]) message.data;
-                        String hitPlayerId = hitData[0];
-                        int damage = Integer.parseInt(hitData[1]);
-                        server.handlePlayerHit(hitPlayerId, damage);
-                    } else {
-                        System.err.println("Invalid PLAYER_HIT data type: " + message.data.getClass());
-                    }
-                    break;
-
-                case NetworkMessage.PING:
-                    sendMessage(new NetworkMessage(NetworkMessage.PONG, "", "pong", message.sequence));
-                    break;
-
-            }
-        } catch (Exception e) {
-            System.err.println("Error processing message: " + e.getMessage());
-            e.printStackTrace();
+    @Override
+    public void send(OutboundMessage message) {
+        if (connected && !sendQueue.offer(message)) {
+            onQueueOverBudget(sendQueue.size());
         }
     }
 
-    public void sendMessage(NetworkMessage message) {
-        if (connected && !sendQueue.offer(message)) {
-            System.err.println("Send queue full, dropping message");
+    @Override
+    protected void closeSlowClient() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
         }
     }
 
+    @Override
+    public String getQueueStats() {
+        return sendQueue.summary() + (isSlowClient() ? " | SLOW" : "");
+    }
+
+    @Override
     public boolean isConnected() {
         return connected && socket != null && !socket.isClosed();
     }
 
+    @Override
+    protected boolean supportsUdp() {
+        return stream != null && stream.getMode() == MessageStream.MODE_BINARY;
+    }
+
     private void cleanup() {
         connected = false;
-        try {
-            if (in != null) {
-                in.close();
-            }
-        } catch (IOException e) {
-            // Ignore
+        if (sendThread != null) {
+            sendThread.interrupt();
         }
-        
+        sendQueue.clear();
         try {
-            if (out != null) {
-                out.close();
+            if (stream != null) {
+                stream.close();
             }
         } catch (IOException e) {
             // Ignore
@@ -210,11 +174,6 @@ public class ClientHandler implements Runnable {
             // Ignore
         }
 
-        if (playerId != null) {
-            // Broadcast 
-            server.broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_LEAVE, playerId, playerId, server.messageCounter.incrementAndGet()));
-            server.removeClient(playerId);
-            System.out.println("Player left game: " + playerId);
-        }
+        handleDisconnect();
     }
 }
\ No newline at end of file
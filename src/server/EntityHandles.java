@@ -0,0 +1,34 @@
+package server;
+
+import java.util.BitSet;
+
+// Hands out 16-bit entity handles. Allocation moves forward through the range before wrapping,
+// so a released handle is not reused while stale packets that still name it may be in flight.
+public class EntityHandles {
+    public static final int MAX_HANDLE = 0xFFFF;
+
+    private final BitSet used = new BitSet(MAX_HANDLE + 1);
+    private int next = 1;
+
+    // Handle 0 is reserved for "not assigned yet".
+    public synchronized int allocate() {
+        int handle = used.nextClearBit(next);
+        if (handle > MAX_HANDLE) {
+            handle = used.nextClearBit(1);
+            if (handle > MAX_HANDLE) {
+                throw new IllegalStateException("Out of entity handles");
+            }
+        }
+        used.set(handle);
+        next = handle + 1;
+        return handle;
+    }
+
+    public synchronized void release(int handle) {
+        used.clear(handle);
+    }
+
+    public synchronized int size() {
+        return used.cardinality();
+    }
+}
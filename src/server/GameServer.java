@@ -1,5 +1,6 @@
 package server;
 
+import java.awt.geom.Rectangle2D;
 import java.io.*;
 import java.net.*;
 import java.util.*;
@@ -9,26 +10,80 @@ import shared.*;
 
 public class GameServer {
     private ServerSocket serverSocket;
-    private Map<String, ClientHandler> clients = new ConcurrentHashMap<>();
-    public Map<String, PlayerData> players = new ConcurrentHashMap<>();
+    // Keyed by the 16-bit handle assigned at join; handlesById maps the client's string id back to it.
+    private Map<Integer, ClientConnection> clients = new ConcurrentHashMap<>();
+    public Map<Integer, PlayerData> players = new ConcurrentHashMap<>();
+    private final Map<String, Integer> handlesById = new ConcurrentHashMap<>();
+    private final EntityHandles playerHandles = new EntityHandles();
+    private final AtomicInteger bulletCounter = new AtomicInteger(0);
     private Map<String, BotData> bots = new ConcurrentHashMap<>();
     public Map<Integer, ChickenData> chickens = new ConcurrentHashMap<>();
     private boolean running = false;
     private int port;
     private Thread gameLoop;
     private ExecutorService executor;
+    private NioServer nioServer;
+    private UdpGateway udpGateway;
+    private int tick = 0;
+    private long chickenSteps = 0;
+    private final Queue<ClientConnection> pendingJoinStates = new ConcurrentLinkedQueue<>();
+    private final WeaponData[] weapons;
+    private final Map<Integer, ChickenData> lastChickenBroadcast = new HashMap<>();
+    private final MapLoader map = new MapLoader();
+    private final InterestGrid<PlayerData> playerGrid = new InterestGrid<>(Config.INTEREST_CELL_SIZE);
+    private final InterestGrid<ChickenData> chickenGrid = new InterestGrid<>(Config.INTEREST_CELL_SIZE);
+    private PotentiallyVisibleSet pvs;
+    private final LagCompensator lagCompensator = new LagCompensator();
+    private final ProjectileSystem projectiles = new ProjectileSystem();
+    private final TickScheduler tickScheduler = new TickScheduler(Config.SERVER_TICK_RATE);
     public AtomicInteger messageCounter = new AtomicInteger(0);
     public ServerDebugUI debugUI;
 
     public GameServer(int port) {
         this.port = port;
-        this.executor = Executors.newFixedThreadPool(10);
+        if (isVirtualThreadMode()) {
+            this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            this.executor = Executors.newFixedThreadPool(10);
+        }
+        this.weapons = new WeaponData[Config.WEAPON_SPAWN_POINTS.length];
+        for (int i = 0; i < weapons.length; i++) {
+            int[] point = Config.WEAPON_SPAWN_POINTS[i];
+            weapons[i] = new WeaponData(i, point[0], point[1]);
+        }
+        try {
+            map.loadCollisions(Config.MAP_PATH);
+            System.out.println("Loaded " + map.collisions.size() + " collision boxes from " + Config.MAP_PATH);
+        } catch (Exception e) {
+            System.err.println("Could not load map collisions, players will move freely: " + e.getMessage());
+        }
+        if (Config.USE_PVS) {
+            String pvsPath = PotentiallyVisibleSet.pathFor(Config.MAP_PATH);
+            try {
+                PotentiallyVisibleSet loaded = PotentiallyVisibleSet.load(pvsPath);
+                if (loaded.matches(map, Config.PVS_REGION_TILES, PotentiallyVisibleSet.mapChecksum(Config.MAP_PATH))) {
+                    pvs = loaded;
+                    System.out.println("Loaded PVS with " + pvs.getRegionCount() + " regions from " + pvsPath);
+                } else {
+                    System.err.println("PVS at " + pvsPath + " was built for another map (run PvsBuilder), culling by distance only");
+                }
+            } catch (Exception e) {
+                System.err.println("No PVS at " + pvsPath + " (run PvsBuilder), culling by distance only: " + e.getMessage());
+            }
+        }
+    }
+
+    public static boolean isVirtualThreadMode() {
+        return "virtual".equalsIgnoreCase(Config.SERVER_IO_MODE);
     }
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(port);
-            serverSocket.setSoTimeout(1000);
+            boolean useNio = "nio".equalsIgnoreCase(Config.SERVER_IO_MODE);
+            if (!useNio) {
+                serverSocket = new ServerSocket(port);
+                serverSocket.setSoTimeout(1000);
+            }
             running = true;
             
             debugUI = new ServerDebugUI(this);
@@ -38,16 +93,34 @@ public class GameServer {
             
             System.out.println("=== Game Server Started ===");
             System.out.println("Port: " + port);
+            System.out.println("I/O mode: " + Config.SERVER_IO_MODE);
             System.out.println("Local IP: " + getLocalIPAddress());
             System.out.println("Waiting for connections...");
             System.out.println("================================");
 
             debugUI.logMessage("Server started on port " + port);
             debugUI.logMessage("Local IP: " + getLocalIPAddress());
+            if (Config.USE_UDP) {
+                try {
+                    udpGateway = new UdpGateway(this, port);
+                    udpGateway.start();
+                    debugUI.logMessage("UDP channel listening on port " + port);
+                } catch (SocketException e) {
+                    udpGateway = null;
+                    System.err.println("UDP channel unavailable, state stays on TCP: " + e.getMessage());
+                }
+            }
+
             gameLoop = new Thread(this::runGameLoop, "GameLoop");
             gameLoop.setDaemon(true);
             gameLoop.start();
 
+            if (useNio) {
+                nioServer = new NioServer(this, port, Config.NIO_IO_THREADS);
+                nioServer.run();
+                return;
+            }
+
             while (running) {
                 try {
                 Socket clientSocket = serverSocket.accept();
@@ -74,6 +147,12 @@ public class GameServer {
 
     public void stop() {
         running = false;
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+        if (udpGateway != null) {
+            udpGateway.stop();
+        }
         try {
             if (serverSocket != null) {
                 serverSocket.close();
@@ -86,68 +165,265 @@ public class GameServer {
         }
     }
 
-    public void addClient(String playerId, ClientHandler handler) {
-        clients.put(playerId, handler);
+    // Returns the player's handle; a client rejoining under the same id keeps its old one.
+    public int addClient(String playerId, ClientConnection handler) {
+        int handle = handlesById.computeIfAbsent(playerId, id -> playerHandles.allocate());
+        clients.put(handle, handler);
+        return handle;
     }
 
-    public void removeClient(String playerId) {
-        clients.remove(playerId);
-        players.remove(playerId);
+    public ClientConnection getClient(int handle) {
+        return clients.get(handle);
+    }
+
+    public int getHandle(String playerId) {
+        Integer handle = handlesById.get(playerId);
+        return handle != null ? handle : 0;
+    }
+
+    // Only removes the player if the handle still belongs to this connection.
+    public boolean removeClient(int handle, ClientConnection handler) {
+        if (!clients.remove(handle, handler)) {
+            return false;
+        }
+        players.remove(handle);
+        handlesById.remove(handler.getPlayerId(), handle);
+        lagCompensator.release(handle);
+        playerHandles.release(handle);
+        return true;
+    }
+
+    // Bullets live for a second or two, so a wrapping counter is enough to keep their handles apart.
+    public int nextBulletHandle() {
+        return Math.floorMod(bulletCounter.getAndIncrement(), EntityHandles.MAX_HANDLE) + 1;
     }
 
     public void addPlayer(PlayerData playerData) {
-        players.put(playerData.id, playerData);
-        broadcastToOthers(playerData.id, new NetworkMessage(NetworkMessage.PLAYER_JOIN, playerData.id, playerData, messageCounter.incrementAndGet()));
+        players.put(playerData.handle, playerData);
+        broadcastToOthers(playerData.handle, new NetworkMessage(NetworkMessage.PLAYER_JOIN, playerData.id, playerData, messageCounter.incrementAndGet()));
 
-        ClientHandler newClient = clients.get(playerData.id);
+        // The newcomer gets the whole world in one GAME_STATE, built on the game loop so its tick lines up with snapshots.
+        ClientConnection newClient = clients.get(playerData.handle);
         if (newClient != null) {
-            for (PlayerData existingPlayer : players.values()) {
-                if (!existingPlayer.id.equals(playerData.id)) {
-                    newClient.sendMessage(
-                            new NetworkMessage(NetworkMessage.PLAYER_JOIN, existingPlayer.id, existingPlayer, messageCounter.incrementAndGet()));
-                }
-            }
+            pendingJoinStates.add(newClient);
         }
         
         debugUI.logMessage("Player joined: " + playerData.name + " (ID: " + playerData.id + ")");
     }
 
-    public void updatePlayer(PlayerData playerData) {
-        players.put(playerData.id, playerData);
-        broadcastToOthers(playerData.id, new NetworkMessage(NetworkMessage.PLAYER_UPDATE, playerData.id, playerData, messageCounter.incrementAndGet()));
+    // Latest state only; it goes out with the next world snapshot.
+    // Updates name the player by handle only, so the identity is carried over from the join.
+    public void updatePlayer(int handle, PlayerData playerData) {
+        PlayerData existing = players.get(handle);
+        if (existing == null) {
+            return;
+        }
+        playerData.copyIdentity(existing);
+        players.put(handle, playerData);
     }
 
-    public void broadcastToOthers(String excludePlayerId, NetworkMessage message) {
-        for (Map.Entry<String, ClientHandler> entry : clients.entrySet()) {
-            if (!entry.getKey().equals(excludePlayerId)) {
-                entry.getValue().sendMessage(message);
+    // Encoded once up front so every recipient gets the same bytes, even if the payload object changes later.
+    public void broadcastToOthers(int excludeHandle, NetworkMessage message) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        OutboundMessage outbound = new OutboundMessage(message);
+        outbound.frameBytes();
+        for (Map.Entry<Integer, ClientConnection> entry : clients.entrySet()) {
+            if (entry.getKey() != excludeHandle) {
+                entry.getValue().send(outbound);
             }
         }
     }
 
     public void broadcastToAll(NetworkMessage message) {
-        for (ClientHandler handler : clients.values()) {
-            handler.sendMessage(message);
+        if (clients.isEmpty()) {
+            return;
+        }
+        OutboundMessage outbound = new OutboundMessage(message);
+        outbound.frameBytes();
+        for (ClientConnection handler : clients.values()) {
+            handler.send(outbound);
         }
     }
 
     private void runGameLoop() {
-        long frameTime = 1000L / Config.FPS;
+        int snapshotTicks = Math.max(1, Math.round((float) Config.SERVER_TICK_RATE / Config.SNAPSHOT_RATE));
         while (running) {
-            long start = System.currentTimeMillis();
-
-            cleanupDisconnectedClients();
-
-            long dt = System.currentTimeMillis() - start;
-            long sleep = Math.max(2, frameTime - dt);
+            long tickStart;
             try {
-                Thread.sleep(sleep);
+                tickStart = tickScheduler.awaitTick();
             } catch (InterruptedException e) {
                 break;
             }
+            long start = System.currentTimeMillis();
+            tick++;
+
+            // One bad tick is logged and skipped; letting it escape would stop the world for everyone.
+            try {
+                runTick(start, snapshotTicks);
+            } catch (Exception e) {
+                System.err.println("Tick " + tick + " failed: " + e);
+                e.printStackTrace();
+            }
+
+            tickScheduler.tickFinished(tickStart);
         }
     }
 
+    private void runTick(long start, int snapshotTicks) {
+        cleanupDisconnectedClients();
+        for (ClientConnection client : clients.values()) {
+            client.pingIfDue(start);
+        }
+        processInputs();
+        lagCompensator.record(start, players.values());
+        if (Config.USE_SERVER_PROJECTILES) {
+            updateProjectiles(start);
+        }
+        // Chickens step at their own rate, however many server ticks that is, so they move and respawn at the
+        // same speed whatever SERVER_TICK_RATE is.
+        long dueChickenSteps = (long) tick * Config.CHICKEN_UPDATE_RATE / Config.SERVER_TICK_RATE;
+        while (chickenSteps < dueChickenSteps) {
+            chickenSteps++;
+            updateChickens();
+        }
+
+        WorldSnapshot snapshot = null;
+        Set<ClientConnection> joined = Collections.emptySet();
+        if (!pendingJoinStates.isEmpty()) {
+            snapshot = buildSnapshot();
+            joined = sendJoinStates(snapshot);
+        }
+        if (tick % snapshotTicks == 0 && !clients.isEmpty()) {
+            broadcastSnapshot(snapshot != null ? snapshot : buildSnapshot(), joined);
+        }
+    }
+
+    public TickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    // Moves every player by the inputs that arrived since the last tick. Other live players block movement, as on the client.
+    private void processInputs() {
+        for (ClientConnection client : clients.values()) {
+            PlayerData player = players.get(client.getHandle());
+            if (player == null || !client.hasPendingInputs()) {
+                continue;
+            }
+            List<Rectangle2D.Double> blockers = new ArrayList<>();
+            for (PlayerData other : players.values()) {
+                if (other != player && other.hp > 0) {
+                    blockers.add(new Rectangle2D.Double(other.x, other.y, Config.PLAYER_WIDTH, Config.PLAYER_HEIGHT));
+                }
+            }
+            client.applyInputs(player, map.collisions, blockers);
+        }
+    }
+
+    private WorldSnapshot buildSnapshot() {
+        List<PlayerData> playerStates = new ArrayList<>(players.size());
+        for (PlayerData player : players.values()) {
+            playerStates.add(player.copy());
+        }
+        List<ChickenData> chickenStates = new ArrayList<>(chickens.size());
+        for (ChickenData chicken : chickens.values()) {
+            chickenStates.add(chicken.copy());
+        }
+        return new WorldSnapshot(tick,
+                playerStates.toArray(new PlayerData[0]), chickenStates.toArray(new ChickenData[0]));
+    }
+
+    // Returns the clients that got this tick's full state. The slot recorded for them holds that full state,
+    // which is what they ack, so broadcastSnapshot must not overwrite it with a filtered view of the same tick.
+    private Set<ClientConnection> sendJoinStates(WorldSnapshot snapshot) {
+        OutboundMessage state = new OutboundMessage(
+                new NetworkMessage(NetworkMessage.GAME_STATE, "", new GameStateData(snapshot, weapons), tick));
+        Set<ClientConnection> sent = new HashSet<>();
+        ClientConnection client;
+        while ((client = pendingJoinStates.poll()) != null) {
+            if (client.isConnected()) {
+                client.send(state);
+                client.recordSnapshot(snapshot);
+                sent.add(client);
+            }
+        }
+        return sent;
+    }
+
+    private void broadcastSnapshot(WorldSnapshot snapshot, Set<ClientConnection> skip) {
+        if (Config.USE_INTEREST_MANAGEMENT) {
+            rebuildInterestGrids(snapshot);
+        }
+        // Clients without an acknowledged baseline share one encoded full snapshot, the rest get their own delta.
+        OutboundMessage full = null;
+        for (ClientConnection client : clients.values()) {
+            if (skip.contains(client)) {
+                continue;
+            }
+            WorldSnapshot view = Config.USE_INTEREST_MANAGEMENT ? interestView(client, snapshot) : snapshot;
+            // Read once: an ack landing mid-loop must not change the baseline between budgeting and diffing.
+            WorldSnapshot baseline = Config.USE_DELTA_SNAPSHOTS ? client.getBaseline() : null;
+            if (Config.SNAPSHOT_BYTE_BUDGET > 0) {
+                view = budgetedView(client, view, Config.USE_DELTA_SNAPSHOTS ? baseline : client.getLastSentSnapshot());
+            }
+            if (baseline == null) {
+                if (view != snapshot) {
+                    client.sendUnreliable(new OutboundMessage(new NetworkMessage(NetworkMessage.SNAPSHOT, "", view, tick)));
+                } else {
+                    if (full == null) {
+                        full = new OutboundMessage(new NetworkMessage(NetworkMessage.SNAPSHOT, "", snapshot, tick));
+                        full.frameBytes();
+                    }
+                    client.sendUnreliable(full);
+                }
+            } else {
+                SnapshotDelta delta = SnapshotDelta.diff(baseline, view);
+                client.sendUnreliable(new OutboundMessage(new NetworkMessage(NetworkMessage.SNAPSHOT_DELTA, "", delta, tick)));
+            }
+            client.recordSnapshot(view);
+        }
+    }
+
+    // With deltas the reference is the acked baseline the delta will be built against, so the costs are what
+    // the delta carries; without them it is the last full snapshot, which deferred entities are copied from.
+    private WorldSnapshot budgetedView(ClientConnection client, WorldSnapshot view, WorldSnapshot reference) {
+        PlayerData viewer = players.get(client.getHandle());
+        if (viewer == null) {
+            return view;
+        }
+        return client.getScheduler().schedule(view, reference, viewer.handle,
+                viewer.x, viewer.y, System.currentTimeMillis());
+    }
+
+    private void rebuildInterestGrids(WorldSnapshot snapshot) {
+        playerGrid.clear();
+        for (PlayerData player : snapshot.players) {
+            playerGrid.insert(player, player.x, player.y);
+        }
+        chickenGrid.clear();
+        for (ChickenData chicken : snapshot.chickens) {
+            chickenGrid.insert(chicken, chicken.x, chicken.y);
+        }
+    }
+
+    // A client that has no player in the world yet still gets everything.
+    private WorldSnapshot interestView(ClientConnection client, WorldSnapshot snapshot) {
+        PlayerData viewer = players.get(client.getHandle());
+        if (viewer == null) {
+            return snapshot;
+        }
+        return client.getInterest().filter(snapshot, playerGrid, chickenGrid, pvs, viewer.x, viewer.y);
+    }
+
+    public UdpGateway getUdpGateway() {
+        return udpGateway;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
     private void spawnInitialChickens() {
         for (int i = 0; i < Config.CHICKEN_SPAWN_COUNT; i++) {
             int[] zone = Config.CHICKEN_SPAWN_ZONES[i % Config.CHICKEN_SPAWN_ZONES.length];
@@ -163,6 +439,7 @@ public class GameServer {
     }
     
     private void updateChickens() {
+        boolean respawned = false;
         for (ChickenData chicken : chickens.values()) {
             if (chicken != null) {
                 if (chicken.hp > 0) {
@@ -230,46 +507,168 @@ public class GameServer {
                         chicken.isHit = false;
                         chicken.isMoving = false;
                         chicken.currentFrame = 0;
-                        chicken.respawnTimer = Config.CHICKEN_RESPAWN_TIME * 60;
+                        chicken.respawnTimer = Config.CHICKEN_RESPAWN_TIME * Config.CHICKEN_UPDATE_RATE;
                         System.out.println("Chicken " + chicken.id + " respawned at " + x + ", " + y);
-                        broadcastChickenUpdates();
+                        respawned = true;
                     }
                 }
             }
         }
+        if (respawned) {
+            broadcastChickenUpdates();
+        }
     }
     
-    public void broadcastChickenUpdates() {
+    // One CHICKEN_STATE with only the chickens that changed since the previous one.
+    public synchronized void broadcastChickenUpdates() {
+        List<ChickenData> changed = new ArrayList<>();
         for (ChickenData chicken : chickens.values()) {
-            if (chicken != null) {
-                NetworkMessage message = new NetworkMessage(NetworkMessage.CHICKEN_UPDATE, "", chicken, messageCounter.incrementAndGet());
-                broadcastToAll(message);
+            ChickenData last = lastChickenBroadcast.get(chicken.id);
+            if (last == null || SnapshotDelta.chickenMask(last, chicken) != 0) {
+                ChickenData copy = chicken.copy();
+                changed.add(copy);
+                lastChickenBroadcast.put(copy.id, copy);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        if (!Config.USE_INTEREST_MANAGEMENT) {
+            broadcastToAll(new NetworkMessage(NetworkMessage.CHICKEN_STATE, "",
+                    changed.toArray(new ChickenData[0]), messageCounter.incrementAndGet()));
+            return;
+        }
+        // Chickens out of a client's view are skipped; it gets them in full from the snapshot once they come into view.
+        for (ClientConnection client : clients.values()) {
+            InterestSet interest = client.getInterest();
+            List<ChickenData> visible = new ArrayList<>(changed.size());
+            for (ChickenData chicken : changed) {
+                if (interest.containsChicken(chicken.id)) {
+                    visible.add(chicken);
+                }
+            }
+            if (!visible.isEmpty()) {
+                client.sendMessage(new NetworkMessage(NetworkMessage.CHICKEN_STATE, "",
+                        visible.toArray(new ChickenData[0]), messageCounter.incrementAndGet()));
             }
         }
     }
 
     private void cleanupDisconnectedClients() {
-        List<String> toRemove = new ArrayList<>();
-        for (Map.Entry<String, ClientHandler> entry : clients.entrySet()) {
+        List<Map.Entry<Integer, ClientConnection>> toRemove = new ArrayList<>();
+        for (Map.Entry<Integer, ClientConnection> entry : clients.entrySet()) {
             if (!entry.getValue().isConnected()) {
-                toRemove.add(entry.getKey());
+                toRemove.add(entry);
             }
         }
-        for (String playerId : toRemove) {
-            removeClient(playerId);
-            broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_LEAVE, playerId, playerId, messageCounter.incrementAndGet()));
+        for (Map.Entry<Integer, ClientConnection> entry : toRemove) {
+            String playerId = entry.getValue().getPlayerId();
+            if (removeClient(entry.getKey(), entry.getValue())) {
+                broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_LEAVE, playerId, playerId, messageCounter.incrementAndGet()));
+            }
         }
     }
 
-    public void handlePlayerHit(String playerId, int damage) {
+    public void handleHitReport(HitReport hit, int attackerHandle, int rtt) {
+        int handle = getHandle(hit.playerId);
+        if (Config.USE_LAG_COMPENSATION && !lagCompensator.validate(handle, players.get(handle), hit, rtt,
+                System.currentTimeMillis())) {
+            debugUI.logMessage("Rejected hit on " + hit.playerId + " at " + (int) hit.x + "," + (int) hit.y);
+            return;
+        }
+        // Damage is the server's call; the reported amount is ignored.
+        handlePlayerHit(hit.playerId, Config.BULLET_DAMAGE, attackerHandle);
+    }
+
+    // The spawn is the client's word, so it is checked against the shooter as the server has it. False if the
+    // shooter is dead or unknown or the numbers are not finite; an origin too far from the muzzle is moved
+    // back onto the muzzle circle in the client's direction.
+    public boolean clampShotOrigin(BulletData bullet, int ownerHandle) {
+        PlayerData shooter = players.get(ownerHandle);
+        if (shooter == null || shooter.hp <= 0 || !Double.isFinite(bullet.x) || !Double.isFinite(bullet.y)
+                || !Double.isFinite(bullet.angle)) {
+            return false;
+        }
+        double centerX = shooter.x + Config.PLAYER_WIDTH / 2.0;
+        double centerY = shooter.y + Config.PLAYER_HEIGHT / 2.0;
+        double dx = bullet.x - centerX;
+        double dy = bullet.y - centerY;
+        double distance = Math.hypot(dx, dy);
+        double limit = Config.BULLET_MUZZLE_DISTANCE + Config.BULLET_ORIGIN_SLACK;
+        if (distance > limit) {
+            bullet.x = centerX + dx * Config.BULLET_MUZZLE_DISTANCE / distance;
+            bullet.y = centerY + dy * Config.BULLET_MUZZLE_DISTANCE / distance;
+        }
+        return true;
+    }
+
+    // Half the shooter's round trip is how long ago it fired; the bullet starts that far along its path.
+    public void spawnProjectile(BulletData bullet, int ownerHandle, int rtt) {
+        long lead = Math.min(Config.LAG_COMPENSATION_MAX_MS, Math.max(0, rtt) / 2);
+        projectiles.spawn(bullet, ownerHandle, System.currentTimeMillis() - lead);
+    }
+
+    private void updateProjectiles(long now) {
+        for (BulletHit hit : projectiles.update(now, map.collisions, players.values(), chickens.values(),
+                map.mapPixelW, map.mapPixelH)) {
+            if (hit.kind == BulletHit.PLAYER) {
+                PlayerData victim = players.get(hit.target);
+                if (victim != null) {
+                    handlePlayerHit(victim.id, Config.BULLET_DAMAGE, hit.owner);
+                }
+            } else {
+                ChickenData chicken = chickens.get(hit.target);
+                if (chicken != null && damageChicken(chicken, Config.BULLET_DAMAGE)) {
+                    PlayerData shooter = players.get(hit.owner);
+                    if (shooter != null && shooter.hp > 0) {
+                        shooter.hp = Math.min(Config.PLAYER_HP, shooter.hp + Config.CHICKEN_HEAL_AMOUNT);
+                        broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, "", shooter, messageCounter.incrementAndGet()));
+                    }
+                }
+            }
+            broadcastToAll(new NetworkMessage(NetworkMessage.BULLET_HIT, "", hit, messageCounter.incrementAndGet()));
+        }
+    }
+
+    // Returns true if this hit killed the chicken.
+    public boolean damageChicken(ChickenData chicken, int damage) {
+        if (chicken.hp <= 0) {
+            return false;
+        }
+        chicken.hp -= damage;
+        chicken.isIdle = false;
+        chicken.isHit = true;
+        chicken.currentFrame = 0;
+        debugUI.logMessage("Chicken " + chicken.id + " hit! HP: " + chicken.hp);
+        if (chicken.hp <= 0) {
+            debugUI.logMessage("Chicken " + chicken.id + " died!");
+            return true;
+        }
+        return false;
+    }
+
+    public ProjectileSystem getProjectiles() {
+        return projectiles;
+    }
+
+    public LagCompensator getLagCompensator() {
+        return lagCompensator;
+    }
+
+    public void handlePlayerHit(String playerId, int damage, int attackerHandle) {
         if (debugUI.isPlayerInGodMode(playerId)) {
             debugUI.logMessage("Player " + playerId + " is in god mode - no damage taken");
             return;
         }
         
-        PlayerData player = players.get(playerId);
+        int handle = getHandle(playerId);
+        PlayerData player = players.get(handle);
         if (player != null && player.hp > 0) {
             player.hp -= damage;
+            ClientConnection victim = clients.get(handle);
+            if (victim != null && attackerHandle != 0) {
+                victim.getScheduler().noteAttacker(attackerHandle, System.currentTimeMillis());
+            }
             debugUI.logPlayerHit(playerId, damage);
             debugUI.logMessage("Player " + playerId + " HP: " + player.hp + " (took " + damage + " damage)");
             
@@ -279,14 +678,14 @@ public class GameServer {
                 player.deathTime = System.currentTimeMillis();
                 debugUI.logMessage("Player " + playerId + " died!");
                 
-                for (Map.Entry<String, PlayerData> entry : players.entrySet()) {
-                    if (!entry.getKey().equals(playerId)) {
+                for (Map.Entry<Integer, PlayerData> entry : players.entrySet()) {
+                    if (entry.getKey() != handle) {
                         entry.getValue().kills++;
                     }
                 }
                 
-                for (Map.Entry<String, PlayerData> entry : players.entrySet()) {
-                    broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, entry.getKey(), entry.getValue(), messageCounter.incrementAndGet()));
+                for (PlayerData other : players.values()) {
+                    broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, "", other, messageCounter.incrementAndGet()));
                 }
                 
                 executor.submit(() -> {
@@ -297,8 +696,8 @@ public class GameServer {
                         player.deathTime = 0;
                         player.x = 200 + (int)(Math.random() * 400);
                         player.y = 200 + (int)(Math.random() * 400);
-                        players.put(playerId, player);
-                        broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, playerId, player, messageCounter.incrementAndGet()));
+                        players.replace(handle, player);
+                        broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, "", player, messageCounter.incrementAndGet()));
                         debugUI.logMessage("Player " + playerId + " respawned!");
                     } catch (InterruptedException e) {
                         e.printStackTrace();
@@ -306,12 +705,19 @@ public class GameServer {
                 });
             }
             
-            players.put(playerId, player);
-            broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, playerId, player, messageCounter.incrementAndGet()));
+            players.replace(handle, player);
+            broadcastToAll(new NetworkMessage(NetworkMessage.PLAYER_UPDATE, "", player, messageCounter.incrementAndGet()));
         }
     }
 
+    public NioServer getNioServer() {
+        return nioServer;
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0) {
+            Config.SERVER_IO_MODE = args[0];
+        }
         GameServer server = new GameServer(8888);
         server.start();
     }
@@ -0,0 +1,70 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Uniform grid over entity positions, rebuilt once per snapshot. A query only visits the cells the
+// interest circle overlaps, so the cost per client does not grow with the size of the map.
+public class InterestGrid<T> {
+    private final int cellSize;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+
+    private static class Entry<T> {
+        final T entity;
+        final double x, y;
+
+        Entry(T entity, double x, double y) {
+            this.entity = entity;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public InterestGrid(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+
+    public void insert(T entity, double x, double y) {
+        cells.computeIfAbsent(key(cell(x), cell(y)), k -> new ArrayList<>()).add(new Entry<>(entity, x, y));
+    }
+
+    // Adds every entity within radius of (x, y) to out.
+    public void query(double x, double y, double radius, List<T> out) {
+        double radiusSq = radius * radius;
+        int minX = cell(x - radius), maxX = cell(x + radius);
+        int minY = cell(y - radius), maxY = cell(y + radius);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                List<Entry<T>> entries = cells.get(key(cx, cy));
+                if (entries == null) {
+                    continue;
+                }
+                for (Entry<T> entry : entries) {
+                    double dx = entry.x - x;
+                    double dy = entry.y - y;
+                    if (dx * dx + dy * dy <= radiusSq) {
+                        out.add(entry.entity);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
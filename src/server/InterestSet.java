@@ -0,0 +1,92 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import shared.*;
+
+// What one client can currently see. Entities enter inside Config.INTEREST_RADIUS and leave only once they
+// are Config.INTEREST_HYSTERESIS beyond it, so something standing on the edge does not flicker in and out.
+public class InterestSet {
+    private Set<Integer> players = new HashSet<>();
+    private Set<Integer> chickens = new HashSet<>();
+    private boolean active = false;
+    private long entered = 0;
+    private long left = 0;
+
+    // Cuts the snapshot down to what is around (x, y) and, with a PVS, not behind walls. The client learns about
+    // enters and leaves from the snapshot itself: a delta against an older view adds the newcomers and lists
+    // the ones that went away.
+    public synchronized WorldSnapshot filter(WorldSnapshot snapshot, InterestGrid<PlayerData> playerGrid,
+            InterestGrid<ChickenData> chickenGrid, PotentiallyVisibleSet pvs, double x, double y) {
+        double radius = Config.INTEREST_RADIUS;
+        double keepRadius = radius + Config.INTEREST_HYSTERESIS;
+
+        List<PlayerData> nearPlayers = new ArrayList<>();
+        playerGrid.query(x, y, keepRadius, nearPlayers);
+        Set<Integer> visiblePlayers = new HashSet<>();
+        List<PlayerData> playerStates = new ArrayList<>();
+        for (PlayerData player : nearPlayers) {
+            if ((players.contains(player.handle) || within(player.x, player.y, x, y, radius))
+                    && (pvs == null || pvs.canSee(x, y, player.x, player.y))) {
+                visiblePlayers.add(player.handle);
+                playerStates.add(player);
+            }
+        }
+
+        List<ChickenData> nearChickens = new ArrayList<>();
+        chickenGrid.query(x, y, keepRadius, nearChickens);
+        Set<Integer> visibleChickens = new HashSet<>();
+        List<ChickenData> chickenStates = new ArrayList<>();
+        for (ChickenData chicken : nearChickens) {
+            if ((chickens.contains(chicken.id) || within(chicken.x, chicken.y, x, y, radius))
+                    && (pvs == null || pvs.canSee(x, y, chicken.x, chicken.y))) {
+                visibleChickens.add(chicken.id);
+                chickenStates.add(chicken);
+            }
+        }
+
+        count(players, visiblePlayers);
+        count(chickens, visibleChickens);
+        players = visiblePlayers;
+        chickens = visibleChickens;
+        active = true;
+
+        WorldSnapshot view = new WorldSnapshot(snapshot.tick,
+                playerStates.toArray(new PlayerData[0]), chickenStates.toArray(new ChickenData[0]));
+        view.serverTime = snapshot.serverTime;
+        return view;
+    }
+
+    // Until the first filtered snapshot the client has been sent the whole world, so it sees everything.
+    public synchronized boolean containsChicken(int id) {
+        return !active || chickens.contains(id);
+    }
+
+    public synchronized String summary() {
+        if (!active) {
+            return "all";
+        }
+        return String.format("%dp %dc | +%d -%d", players.size(), chickens.size(), entered, left);
+    }
+
+    private void count(Set<Integer> before, Set<Integer> after) {
+        for (Integer id : after) {
+            if (!before.contains(id)) {
+                entered++;
+            }
+        }
+        for (Integer id : before) {
+            if (!after.contains(id)) {
+                left++;
+            }
+        }
+    }
+
+    private static boolean within(double ex, double ey, double x, double y, double radius) {
+        double dx = ex - x;
+        double dy = ey - y;
+        return dx * dx + dy * dy <= radius * radius;
+    }
+}
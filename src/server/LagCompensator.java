@@ -0,0 +1,187 @@
+package server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import shared.*;
+
+// Where every player's hitbox was over the last Config.LAG_COMPENSATION_MAX_MS, one frame per server tick.
+// All storage is allocated up front: frames live in a ring and players in fixed slots, so recording a tick
+// and looking up a past position are plain array indexing.
+public class LagCompensator {
+    private final int capacity;
+    private final int slots;
+    private final long[] times;
+    private final int[][] handles;
+    private final double[][] xs;
+    private final double[][] ys;
+    private final boolean[][] alive;
+    private final int[] slotOfHandle = new int[EntityHandles.MAX_HANDLE + 1];
+    private final int[] freeSlots;
+    private int freeCount;
+    private int head = 0;
+    private int count = 0;
+
+    private long accepted = 0;
+    private long rejected = 0;
+    private long rewindTotal = 0;
+
+    public LagCompensator() {
+        this(Config.LAG_COMPENSATION_MAX_MS * Config.SERVER_TICK_RATE / 1000 + 2, Config.LAG_COMPENSATION_SLOTS);
+    }
+
+    public LagCompensator(int capacity, int slots) {
+        this.capacity = capacity;
+        this.slots = slots;
+        this.times = new long[capacity];
+        this.handles = new int[capacity][slots];
+        this.xs = new double[capacity][slots];
+        this.ys = new double[capacity][slots];
+        this.alive = new boolean[capacity][slots];
+        Arrays.fill(slotOfHandle, -1);
+        this.freeSlots = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            freeSlots[i] = slots - 1 - i;
+        }
+        this.freeCount = slots;
+    }
+
+    // Called once per tick after movement, so each frame holds the positions that tick's snapshot will carry.
+    public synchronized void record(long time, Collection<PlayerData> players) {
+        int frame = head;
+        Arrays.fill(handles[frame], 0);
+        for (PlayerData player : players) {
+            int slot = slotFor(player.handle);
+            if (slot < 0) {
+                continue;
+            }
+            handles[frame][slot] = player.handle;
+            xs[frame][slot] = player.x;
+            ys[frame][slot] = player.y;
+            alive[frame][slot] = player.hp > 0;
+        }
+        times[frame] = time;
+        head = (head + 1) % capacity;
+        count = Math.min(count + 1, capacity);
+    }
+
+    // Old frames may still name the handle in this slot; they are ignored because a new owner's frames
+    // carry the new handle.
+    public synchronized void release(int handle) {
+        int slot = slotOfHandle[handle];
+        if (slot >= 0) {
+            slotOfHandle[handle] = -1;
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    // Writes the player's top-left corner at the given server time into out, interpolating between the two
+    // ticks around it. False if the player was not recorded or was dead then.
+    public synchronized boolean positionAt(int handle, long time, double[] out) {
+        int slot = slotOfHandle[handle];
+        if (slot < 0 || count == 0) {
+            return false;
+        }
+        int age = ageAt(time);
+        int older = index(age);
+        boolean haveOlder = handles[older][slot] == handle && alive[older][slot];
+        if (age == 0 || time <= times[older]) {
+            return copy(older, slot, haveOlder, out);
+        }
+        int newer = index(age - 1);
+        boolean haveNewer = handles[newer][slot] == handle && alive[newer][slot];
+        if (!haveOlder || !haveNewer) {
+            return haveOlder ? copy(older, slot, true, out) : copy(newer, slot, haveNewer, out);
+        }
+        double t = (double) (time - times[older]) / Math.max(1, times[newer] - times[older]);
+        out[0] = xs[older][slot] + (xs[newer][slot] - xs[older][slot]) * t;
+        out[1] = ys[older][slot] + (ys[newer][slot] - ys[older][slot]) * t;
+        return true;
+    }
+
+    // Checks a reported hit against where the victim was when the shooter saw it. The shooter was looking at
+    // a world one round trip plus the interpolation delay old, with the round trip the server measured itself;
+    // the client's claim about the view time is used when it agrees with that to within
+    // Config.LAG_COMPENSATION_TOLERANCE_MS, so it cannot rewind further. No measurement yet means no hit.
+    public boolean validate(int victimHandle, PlayerData victim, HitReport hit, int rtt, long now) {
+        if (rtt < 0) {
+            return count(false, 0);
+        }
+        long expected = now - rtt - (Config.USE_INTERPOLATION ? Config.INTERPOLATION_DELAY_MS : 0);
+        long viewTime = Math.abs(hit.viewTime - expected) <= Config.LAG_COMPENSATION_TOLERANCE_MS
+                ? hit.viewTime : expected;
+        viewTime = Math.max(now - Config.LAG_COMPENSATION_MAX_MS, Math.min(now, viewTime));
+
+        double[] position = new double[2];
+        if (!positionAt(victimHandle, viewTime, position)) {
+            if (victim == null || victim.hp <= 0) {
+                return count(false, 0);
+            }
+            position[0] = victim.x;
+            position[1] = victim.y;
+        }
+        double slack = Config.LAG_COMPENSATION_HIT_SLACK;
+        boolean hitBox = hit.x >= position[0] - slack && hit.x <= position[0] + Config.PLAYER_WIDTH + slack
+                && hit.y >= position[1] - slack && hit.y <= position[1] + Config.PLAYER_HEIGHT + slack;
+        return count(hitBox, now - viewTime);
+    }
+
+    public synchronized String summary() {
+        long total = accepted + rejected;
+        return String.format("Lag comp: %d ok / %d rejected | rewind %dms", accepted, rejected,
+                total == 0 ? 0 : rewindTotal / total);
+    }
+
+    private synchronized boolean count(boolean ok, long rewind) {
+        if (ok) {
+            accepted++;
+        } else {
+            rejected++;
+        }
+        rewindTotal += rewind;
+        return ok;
+    }
+
+    private boolean copy(int frame, int slot, boolean valid, double[] out) {
+        if (!valid) {
+            return false;
+        }
+        out[0] = xs[frame][slot];
+        out[1] = ys[frame][slot];
+        return true;
+    }
+
+    private int slotFor(int handle) {
+        int slot = slotOfHandle[handle];
+        if (slot < 0 && freeCount > 0) {
+            slot = freeSlots[--freeCount];
+            slotOfHandle[handle] = slot;
+        }
+        return slot;
+    }
+
+    // Age 0 is the newest frame. Ticks are close to evenly spaced, so the age is guessed from the average
+    // spacing and then corrected by a step or two to the newest frame at or before the time.
+    private int ageAt(long time) {
+        long newest = times[index(0)];
+        long oldest = times[index(count - 1)];
+        if (time >= newest || count == 1) {
+            return 0;
+        }
+        if (time <= oldest) {
+            return count - 1;
+        }
+        int age = (int) ((newest - time) * (count - 1) / Math.max(1, newest - oldest));
+        age = Math.max(0, Math.min(count - 1, age));
+        while (age < count - 1 && times[index(age)] > time) {
+            age++;
+        }
+        while (age > 0 && times[index(age - 1)] <= time) {
+            age--;
+        }
+        return age;
+    }
+
+    private int index(int age) {
+        return (head - 1 - age + capacity) % capacity;
+    }
+}
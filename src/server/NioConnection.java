@@ -0,0 +1,193 @@
+package server;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import shared.*;
+
+public class NioConnection extends ClientConnection {
+    private final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private volatile SelectionKey key;
+    private boolean handshakeDone = false;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(Config.NIO_READ_BUFFER_SIZE);
+    private final OutboundQueue pendingWrites = new OutboundQueue();
+    private final Queue<ByteBuffer> inFlight = new ArrayDeque<>();
+    private final List<OutboundMessage> drained = new ArrayList<>();
+    private long lastReadTime = System.currentTimeMillis();
+
+    public NioConnection(SocketChannel channel, GameServer server) throws IOException {
+        super(server);
+        this.channel = channel;
+        this.remoteAddress = channel.getRemoteAddress();
+    }
+
+    void register(SelectionKey key) {
+        this.key = key;
+        if (!pendingWrites.isEmpty()) {
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+        }
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    long getLastReadTime() {
+        return lastReadTime;
+    }
+
+    // Called on the owning I/O thread only.
+    void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            throw new java.io.EOFException("Client connection closed");
+        }
+        lastReadTime = System.currentTimeMillis();
+        readBuffer.flip();
+
+        if (!handshakeDone && readBuffer.hasRemaining()) {
+            int mode = readBuffer.get() & 0xFF;
+            if (mode != MessageStream.MODE_BINARY) {
+                throw new StreamCorruptedException("NIO engine only accepts binary clients (mode " + mode + ")");
+            }
+            handshakeDone = true;
+        }
+
+        while (readBuffer.hasRemaining()) {
+            int frameStart = readBuffer.position();
+            int length = readFrameLength();
+            if (length < 0 || readBuffer.remaining() < length) {
+                readBuffer.position(frameStart);
+                break;
+            }
+            NetworkMessage message = NetworkCodec.decode(readBuffer.array(), readBuffer.position(), length);
+            readBuffer.position(readBuffer.position() + length);
+            processMessage(message);
+        }
+
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= NetworkCodec.MAX_FRAME_SIZE) {
+                throw new StreamCorruptedException("Frame too large");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    // Returns -1 when the length prefix itself is still incomplete.
+    private int readFrameLength() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!readBuffer.hasRemaining()) {
+                return -1;
+            }
+            int b = readBuffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value > NetworkCodec.MAX_FRAME_SIZE) {
+                    throw new StreamCorruptedException("Frame too large: " + value);
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed frame length");
+    }
+
+    // Called on the owning I/O thread only.
+    void onWritable() throws IOException {
+        // State queued behind a partially written frame is still conflated until the socket catches up.
+        if (inFlight.isEmpty()) {
+            pendingWrites.drainTo(drained);
+            for (OutboundMessage message : drained) {
+                inFlight.add(message.frameBuffer());
+            }
+            drained.clear();
+        }
+        while (!inFlight.isEmpty()) {
+            channel.write(inFlight.toArray(new ByteBuffer[0]));
+            while (!inFlight.isEmpty() && !inFlight.peek().hasRemaining()) {
+                inFlight.poll();
+            }
+            if (!inFlight.isEmpty()) {
+                // Socket buffer is full, wait for the next OP_WRITE.
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        if (!pendingWrites.isEmpty()) {
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+        }
+    }
+
+    @Override
+    public void send(OutboundMessage message) {
+        if (!connected) {
+            return;
+        }
+        if (!pendingWrites.offer(message)) {
+            onQueueOverBudget(pendingWrites.size());
+        }
+        SelectionKey k = key;
+        if (k != null && k.isValid()) {
+            try {
+                k.interestOpsOr(SelectionKey.OP_WRITE);
+                k.selector().wakeup();
+            } catch (java.nio.channels.CancelledKeyException e) {
+                // Connection is closing
+            }
+        }
+    }
+
+    // Shutting down input makes the channel report EOF, so the owning I/O thread closes it normally.
+    @Override
+    protected void closeSlowClient() {
+        try {
+            channel.shutdownInput();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    @Override
+    public String getQueueStats() {
+        return pendingWrites.summary() + (isSlowClient() ? " | SLOW" : "");
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected && channel.isOpen();
+    }
+
+    boolean close() {
+        if (!connected) {
+            return false;
+        }
+        connected = false;
+        pendingWrites.clear();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        handleDisconnect();
+        return true;
+    }
+}
@@ -0,0 +1,203 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import shared.*;
+
+public class NioServer {
+    private final GameServer server;
+    private final int port;
+    private final IoWorker[] workers;
+    private final AtomicInteger connectionCount = new AtomicInteger(0);
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private volatile boolean running = false;
+    private int nextWorker = 0;
+
+    public NioServer(GameServer server, int port, int ioThreads) {
+        this.server = server;
+        this.port = port;
+        this.workers = new IoWorker[Math.max(1, ioThreads)];
+    }
+
+    // Blocks the calling thread accepting connections until stop() is called.
+    public void run() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new IoWorker(i);
+            workers[i].start();
+        }
+
+        while (running) {
+            acceptSelector.select(1000);
+            Iterator<SelectionKey> it = acceptSelector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    accept();
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            NioConnection connection = new NioConnection(channel, server);
+            IoWorker worker = workers[nextWorker];
+            nextWorker = (nextWorker + 1) % workers.length;
+            worker.assign(connection);
+            server.debugUI.logMessage("New client connected: " + connection.getRemoteAddress());
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (IoWorker worker : workers) {
+            if (worker != null) {
+                worker.shutdown();
+            }
+        }
+        try {
+            if (acceptSelector != null) {
+                acceptSelector.wakeup();
+                acceptSelector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getIoThreadCount() {
+        return workers.length;
+    }
+
+    private class IoWorker extends Thread {
+        private final Selector selector;
+        private final Queue<NioConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        IoWorker(int index) throws IOException {
+            super("Nio-IO-" + index);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void assign(NioConnection connection) {
+            pendingRegistrations.add(connection);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            interrupt();
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(1000);
+                    registerPending();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (java.io.EOFException e) {
+                            System.err.println("Client connection closed");
+                            closeConnection(connection);
+                        } catch (IOException | CancelledKeyException e) {
+                            System.err.println("Error handling client: " + e.getMessage());
+                            closeConnection(connection);
+                        } catch (Exception e) {
+                            System.err.println("Unexpected error: " + e.getMessage());
+                            e.printStackTrace();
+                            closeConnection(connection);
+                        }
+                    }
+
+                    closeIdleConnections();
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    System.err.println("Selector error: " + e.getMessage());
+                }
+            }
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    closeConnection((NioConnection) key.attachment());
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                // Ignore
+            }
+        }
+
+        private void registerPending() {
+            NioConnection connection;
+            while ((connection = pendingRegistrations.poll()) != null) {
+                try {
+                    SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                    connection.register(key);
+                    connectionCount.incrementAndGet();
+                    System.out.println("Client connected: " + connection.getRemoteAddress() + " (nio)");
+                } catch (ClosedChannelException e) {
+                    System.err.println("Client disconnected before registration");
+                }
+            }
+        }
+
+        // Mirrors the 5 second socket timeout used by the blocking handler.
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheck < 1000) {
+                return;
+            }
+            lastIdleCheck = now;
+            for (SelectionKey key : selector.keys()) {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (now - connection.getLastReadTime() > 5000) {
+                    closeConnection(connection);
+                }
+            }
+        }
+
+        private void closeConnection(NioConnection connection) {
+            if (connection != null && connection.close()) {
+                connectionCount.decrementAndGet();
+            }
+        }
+    }
+}
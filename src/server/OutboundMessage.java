@@ -0,0 +1,33 @@
+package server;
+
+import java.nio.ByteBuffer;
+import shared.*;
+
+// A message plus its binary frame, encoded at most once no matter how many clients it is queued for.
+public final class OutboundMessage {
+    public final NetworkMessage message;
+    private volatile byte[] frame;
+
+    public OutboundMessage(NetworkMessage message) {
+        this.message = message;
+    }
+
+    public byte[] frameBytes() {
+        byte[] encoded = frame;
+        if (encoded == null) {
+            synchronized (this) {
+                encoded = frame;
+                if (encoded == null) {
+                    encoded = NetworkCodec.encodeFrame(message);
+                    frame = encoded;
+                }
+            }
+        }
+        return encoded;
+    }
+
+    // Each caller gets its own read-only view so positions never interfere.
+    public ByteBuffer frameBuffer() {
+        return ByteBuffer.wrap(frameBytes()).asReadOnlyBuffer();
+    }
+}
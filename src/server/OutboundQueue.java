@@ -0,0 +1,134 @@
+package server;
+
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import shared.*;
+
+// Per-client send queue. Events keep their order and go first; state messages are keyed per entity
+// and a newer one replaces the queued one in place, so a slow reader only ever holds the latest state.
+public class OutboundQueue {
+    private final ArrayDeque<OutboundMessage> events = new ArrayDeque<>();
+    private final LinkedHashMap<Object, OutboundMessage> state = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private long conflated = 0;
+    private long dropped = 0;
+    private int peakDepth = 0;
+
+    // Returns false once the queue is past Config.SEND_QUEUE_BUDGET; the message is queued either way.
+    public boolean offer(OutboundMessage message) {
+        lock.lock();
+        try {
+            Object key = conflationKey(message.message);
+            if (key == null) {
+                events.add(message);
+            } else if (state.put(key, message) != null) {
+                conflated++;
+            }
+            int depth = events.size() + state.size();
+            peakDepth = Math.max(peakDepth, depth);
+            notEmpty.signal();
+            return depth <= Config.SEND_QUEUE_BUDGET;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public OutboundMessage take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (events.isEmpty() && state.isEmpty()) {
+                notEmpty.await();
+            }
+            return pollLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int drainTo(Collection<OutboundMessage> target) {
+        lock.lock();
+        try {
+            int count = events.size() + state.size();
+            target.addAll(events);
+            target.addAll(state.values());
+            events.clear();
+            state.clear();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private OutboundMessage pollLocked() {
+        if (!events.isEmpty()) {
+            return events.poll();
+        }
+        Iterator<OutboundMessage> it = state.values().iterator();
+        OutboundMessage next = it.next();
+        it.remove();
+        return next;
+    }
+
+    // Discards whatever is left, e.g. when the connection closes.
+    public void clear() {
+        lock.lock();
+        try {
+            dropped += events.size() + state.size();
+            events.clear();
+            state.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return events.isEmpty() && state.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return events.size() + state.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String summary() {
+        lock.lock();
+        try {
+            return String.format("depth %d (peak %d) | conflated %d | dropped %d",
+                    events.size() + state.size(), peakDepth, conflated, dropped);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Null means the message is an event and must be delivered.
+    static Object conflationKey(NetworkMessage message) {
+        switch (message.type) {
+            case NetworkMessage.SNAPSHOT:
+            case NetworkMessage.SNAPSHOT_DELTA:
+                return "snapshot";
+            case NetworkMessage.PLAYER_UPDATE:
+                if (message.data instanceof PlayerData) {
+                    return "player:" + ((PlayerData) message.data).id;
+                }
+                return null;
+            case NetworkMessage.CHICKEN_UPDATE:
+                if (message.data instanceof ChickenData) {
+                    return "chicken:" + ((ChickenData) message.data).id;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+}
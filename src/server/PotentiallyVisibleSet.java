@@ -0,0 +1,236 @@
+package server;
+
+import java.awt.geom.Rectangle2D;
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import shared.*;
+
+// Which map regions can possibly see which, precomputed by PvsBuilder from the wall layer and the collision
+// boxes and stored next to the map. At runtime a lookup is two region indexes and one bit test.
+// The header records the map file's checksum, so a set built for another version of the map is refused.
+public class PotentiallyVisibleSet {
+    private static final int MAGIC = 0x50565332;
+    // Rays are cast between these points inside every open tile of the two regions.
+    private static final double[] SAMPLE_OFFSETS = { 0.25, 0.75 };
+
+    public final int regionSize;
+    public final int regionsX, regionsY;
+    public final long mapChecksum;
+    private final long[][] visible;
+
+    public PotentiallyVisibleSet(int regionSize, int regionsX, int regionsY, long mapChecksum) {
+        this.regionSize = regionSize;
+        this.regionsX = regionsX;
+        this.regionsY = regionsY;
+        this.mapChecksum = mapChecksum;
+        int regions = regionsX * regionsY;
+        this.visible = new long[regions][(regions + 63) / 64];
+    }
+
+    public boolean canSee(double fromX, double fromY, double toX, double toY) {
+        int to = region(toX, toY);
+        return (visible[region(fromX, fromY)][to >>> 6] & (1L << to)) != 0;
+    }
+
+    // True if this set was built from this map file with these regions; anything else would cull by the
+    // wrong walls.
+    public boolean matches(MapLoader map, int regionTiles, long checksum) {
+        return regionSize == regionTiles * map.tileWidth
+                && regionsX == (map.mapWidthTiles + regionTiles - 1) / regionTiles
+                && regionsY == (map.mapHeightTiles + regionTiles - 1) / regionTiles
+                && mapChecksum == checksum;
+    }
+
+    public int getRegionCount() {
+        return regionsX * regionsY;
+    }
+
+    public int countVisible(int region) {
+        int count = 0;
+        for (long word : visible[region]) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private int region(double x, double y) {
+        int rx = Math.max(0, Math.min(regionsX - 1, (int) (x / regionSize)));
+        int ry = Math.max(0, Math.min(regionsY - 1, (int) (y / regionSize)));
+        return ry * regionsX + rx;
+    }
+
+    private void set(int a, int b) {
+        visible[a][b >>> 6] |= 1L << b;
+        visible[b][a >>> 6] |= 1L << a;
+    }
+
+    public static String pathFor(String mapPath) {
+        return mapPath.replaceAll("\\.tmx$", "") + ".pvs";
+    }
+
+    public static long mapChecksum(String mapPath) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(Paths.get(mapPath)));
+        return crc.getValue();
+    }
+
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(path))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(regionSize);
+            out.writeInt(regionsX);
+            out.writeInt(regionsY);
+            out.writeLong(mapChecksum);
+            for (long[] row : visible) {
+                for (long word : row) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    public static PotentiallyVisibleSet load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a PVS file or built by an older PvsBuilder: " + path);
+            }
+            PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+            for (long[] row : pvs.visible) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = in.readLong();
+                }
+            }
+            return pvs;
+        }
+    }
+
+    // Two regions see each other if any ray between sample points in their open tiles crosses no wall tile.
+    public static PotentiallyVisibleSet build(MapLoader map, int regionTiles, long mapChecksum) {
+        boolean[][] opaque = opaqueTiles(map);
+        int[][] opaqueCounts = prefixCounts(opaque);
+        int regionsX = (map.mapWidthTiles + regionTiles - 1) / regionTiles;
+        int regionsY = (map.mapHeightTiles + regionTiles - 1) / regionTiles;
+        PotentiallyVisibleSet pvs = new PotentiallyVisibleSet(regionTiles * map.tileWidth, regionsX, regionsY, mapChecksum);
+        int regions = regionsX * regionsY;
+
+        double[][][] samples = new double[regions][][];
+        for (int r = 0; r < regions; r++) {
+            samples[r] = samplePoints(opaque, r % regionsX, r / regionsX, regionTiles);
+        }
+        for (int a = 0; a < regions; a++) {
+            pvs.set(a, a);
+            for (int b = a + 1; b < regions; b++) {
+                if (regionsSeeEachOther(opaque, opaqueCounts, a, b, regionsX, regionTiles, samples)) {
+                    pvs.set(a, b);
+                }
+            }
+        }
+        return pvs;
+    }
+
+    private static boolean regionsSeeEachOther(boolean[][] opaque, int[][] opaqueCounts, int a, int b, int regionsX,
+            int regionTiles, double[][][] samples) {
+        // Nothing opaque in the box spanning both regions means every ray is clear.
+        int ax = a % regionsX, ay = a / regionsX, bx = b % regionsX, by = b / regionsX;
+        if (countOpaque(opaqueCounts, Math.min(ax, bx) * regionTiles, Math.min(ay, by) * regionTiles,
+                (Math.max(ax, bx) + 1) * regionTiles, (Math.max(ay, by) + 1) * regionTiles) == 0) {
+            return true;
+        }
+        for (double[] from : samples[a]) {
+            for (double[] to : samples[b]) {
+                if (clearLine(opaque, from[0], from[1], to[0], to[1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean[][] opaqueTiles(MapLoader map) {
+        boolean[][] opaque = new boolean[map.mapWidthTiles][map.mapHeightTiles];
+        for (MapLoader.Layer layer : map.layers) {
+            if (!"wall".equalsIgnoreCase(layer.name)) {
+                continue;
+            }
+            for (int i = 0; i < layer.gids.length; i++) {
+                if (layer.gids[i] != 0) {
+                    opaque[i % layer.width][i / layer.width] = true;
+                }
+            }
+        }
+        for (Rectangle2D.Double box : map.collisions) {
+            for (int tx = 0; tx < map.mapWidthTiles; tx++) {
+                for (int ty = 0; ty < map.mapHeightTiles; ty++) {
+                    if (box.contains((tx + 0.5) * map.tileWidth, (ty + 0.5) * map.tileHeight)) {
+                        opaque[tx][ty] = true;
+                    }
+                }
+            }
+        }
+        return opaque;
+    }
+
+    // Points in tile units; nobody can stand inside a wall, so opaque tiles get none.
+    private static double[][] samplePoints(boolean[][] opaque, int rx, int ry, int regionTiles) {
+        List<double[]> points = new ArrayList<>();
+        for (int tx = rx * regionTiles; tx < Math.min(opaque.length, (rx + 1) * regionTiles); tx++) {
+            for (int ty = ry * regionTiles; ty < Math.min(opaque[0].length, (ry + 1) * regionTiles); ty++) {
+                if (opaque[tx][ty]) {
+                    continue;
+                }
+                for (double ox : SAMPLE_OFFSETS) {
+                    for (double oy : SAMPLE_OFFSETS) {
+                        points.add(new double[] { tx + ox, ty + oy });
+                    }
+                }
+            }
+        }
+        return points.toArray(new double[0][]);
+    }
+
+    // counts[x][y] is the number of opaque tiles above and to the left of (x, y), so any box is four lookups.
+    private static int[][] prefixCounts(boolean[][] opaque) {
+        int[][] counts = new int[opaque.length + 1][opaque[0].length + 1];
+        for (int tx = 0; tx < opaque.length; tx++) {
+            for (int ty = 0; ty < opaque[0].length; ty++) {
+                counts[tx + 1][ty + 1] = counts[tx][ty + 1] + counts[tx + 1][ty] - counts[tx][ty]
+                        + (opaque[tx][ty] ? 1 : 0);
+            }
+        }
+        return counts;
+    }
+
+    private static int countOpaque(int[][] counts, int x0, int y0, int x1, int y1) {
+        x1 = Math.min(x1, counts.length - 1);
+        y1 = Math.min(y1, counts[0].length - 1);
+        return counts[x1][y1] - counts[x0][y1] - counts[x1][y0] + counts[x0][y0];
+    }
+
+    // Walks every tile the segment passes through (coordinates in tiles).
+    private static boolean clearLine(boolean[][] opaque, double x0, double y0, double x1, double y1) {
+        int tx = (int) x0, ty = (int) y0;
+        int endX = (int) x1, endY = (int) y1;
+        double dx = x1 - x0, dy = y1 - y0;
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1;
+        double tDeltaX = dx == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+        double tDeltaY = dy == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+        double tMaxX = dx == 0 ? Double.POSITIVE_INFINITY : (dx > 0 ? tx + 1 - x0 : x0 - tx) * tDeltaX;
+        double tMaxY = dy == 0 ? Double.POSITIVE_INFINITY : (dy > 0 ? ty + 1 - y0 : y0 - ty) * tDeltaY;
+        while (tx != endX || ty != endY) {
+            if (tMaxX < tMaxY) {
+                tMaxX += tDeltaX;
+                tx += stepX;
+            } else {
+                tMaxY += tDeltaY;
+                ty += stepY;
+            }
+            if (opaque[tx][ty]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
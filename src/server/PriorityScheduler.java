@@ -0,0 +1,163 @@
+package server;
+
+import java.util.*;
+import shared.*;
+
+// Fits each client's snapshot into Config.SNAPSHOT_BYTE_BUDGET. An entity whose state changed since the client's
+// baseline gains priority every snapshot, faster when it is close or has just shot this client. The highest ones go out
+// and the rest keep the state the client already has, so distant entities simply update less often.
+public class PriorityScheduler {
+    private static final double CHICKEN_WEIGHT = 0.5;
+    // Snapshot header: tick, server time, baseline and the entity counts.
+    private static final int SNAPSHOT_OVERHEAD = 16;
+
+    private final Map<Integer, Double> playerPriority = new HashMap<>();
+    private final Map<Integer, Double> chickenPriority = new HashMap<>();
+    private int attackerHandle = 0;
+    private long attackedAt = 0;
+    private long sent = 0;
+    private long deferred = 0;
+    private double averageBytes = 0;
+
+    private static class Candidate {
+        final PlayerData player;
+        final ChickenData chicken;
+        final Object previous;
+        final double priority;
+        final int cost;
+
+        Candidate(PlayerData player, ChickenData chicken, Object previous, double priority, int cost) {
+            this.player = player;
+            this.chicken = chicken;
+            this.previous = previous;
+            this.priority = priority;
+            this.cost = cost;
+        }
+    }
+
+    public synchronized void noteAttacker(int handle, long now) {
+        attackerHandle = handle;
+        attackedAt = now;
+    }
+
+    // reference is the snapshot the client is known to have, normally the acked delta baseline. Costs are the
+    // masks against it, and entities that do not fit are copied from it unchanged, which costs nothing in a delta
+    // built against it. Newcomers that do not fit stay out until their priority wins.
+    public synchronized WorldSnapshot schedule(WorldSnapshot view, WorldSnapshot reference, int viewerHandle,
+            double x, double y, long now) {
+        Map<Integer, PlayerData> previousPlayers = new HashMap<>();
+        Map<Integer, ChickenData> previousChickens = new HashMap<>();
+        if (reference != null) {
+            for (PlayerData p : reference.players) {
+                previousPlayers.put(p.handle, p);
+            }
+            for (ChickenData c : reference.chickens) {
+                previousChickens.put(c.id, c);
+            }
+        }
+        boolean recentlyAttacked = attackerHandle != 0 && now - attackedAt < Config.PRIORITY_ATTACKER_MS;
+
+        List<PlayerData> players = new ArrayList<>();
+        List<ChickenData> chickens = new ArrayList<>();
+        List<Candidate> candidates = new ArrayList<>();
+        int bytes = SNAPSHOT_OVERHEAD;
+        Set<Integer> seenPlayers = new HashSet<>();
+        for (PlayerData player : view.players) {
+            seenPlayers.add(player.handle);
+            PlayerData previous = previousPlayers.get(player.handle);
+            int mask = previous == null ? SnapshotDelta.PLAYER_ALL : SnapshotDelta.playerMask(previous, player);
+            // The client's own player carries the input ack its prediction depends on, so it always goes.
+            if (mask == 0 || player.handle == viewerHandle) {
+                players.add(player);
+                if (mask != 0) {
+                    bytes += playerCost(mask, player);
+                }
+                playerPriority.remove(player.handle);
+                continue;
+            }
+            double weight = weight(player.x, player.y, x, y);
+            if (recentlyAttacked && player.handle == attackerHandle) {
+                weight *= Config.PRIORITY_ATTACKER_BOOST;
+            }
+            double priority = playerPriority.merge(player.handle, weight, Double::sum);
+            candidates.add(new Candidate(player, null, previous, priority, playerCost(mask, player)));
+        }
+        Set<Integer> seenChickens = new HashSet<>();
+        for (ChickenData chicken : view.chickens) {
+            seenChickens.add(chicken.id);
+            ChickenData previous = previousChickens.get(chicken.id);
+            int mask = previous == null ? SnapshotDelta.CHICKEN_ALL : SnapshotDelta.chickenMask(previous, chicken);
+            if (mask == 0) {
+                chickens.add(chicken);
+                chickenPriority.remove(chicken.id);
+                continue;
+            }
+            double weight = weight(chicken.x, chicken.y, x, y) * CHICKEN_WEIGHT;
+            double priority = chickenPriority.merge(chicken.id, weight, Double::sum);
+            candidates.add(new Candidate(null, chicken, previous, priority, chickenCost(mask)));
+        }
+        playerPriority.keySet().retainAll(seenPlayers);
+        chickenPriority.keySet().retainAll(seenChickens);
+
+        candidates.sort((a, b) -> Double.compare(b.priority, a.priority));
+        boolean first = true;
+        for (Candidate candidate : candidates) {
+            // The top one always goes, so an entity bigger than the whole budget cannot starve.
+            if (first || bytes + candidate.cost <= Config.SNAPSHOT_BYTE_BUDGET) {
+                first = false;
+                bytes += candidate.cost;
+                sent++;
+                if (candidate.player != null) {
+                    players.add(candidate.player);
+                    playerPriority.remove(candidate.player.handle);
+                } else {
+                    chickens.add(candidate.chicken);
+                    chickenPriority.remove(candidate.chicken.id);
+                }
+                continue;
+            }
+            deferred++;
+            if (candidate.player != null && candidate.previous != null) {
+                players.add((PlayerData) candidate.previous);
+            } else if (candidate.chicken != null && candidate.previous != null) {
+                chickens.add((ChickenData) candidate.previous);
+            }
+        }
+        averageBytes = averageBytes == 0 ? bytes : averageBytes * 0.9 + bytes * 0.1;
+
+        WorldSnapshot scheduled = new WorldSnapshot(view.tick,
+                players.toArray(new PlayerData[0]), chickens.toArray(new ChickenData[0]));
+        scheduled.serverTime = view.serverTime;
+        return scheduled;
+    }
+
+    public synchronized String summary() {
+        return String.format("~%.0fB | sent %d | deferred %d", averageBytes, sent, deferred);
+    }
+
+    private static double weight(double ex, double ey, double x, double y) {
+        double distance = Math.hypot(ex - x, ey - y);
+        return Config.PRIORITY_DISTANCE_FALLOFF / (Config.PRIORITY_DISTANCE_FALLOFF + distance);
+    }
+
+    // Rough delta sizes: a handle, a mask, about two bytes per quantized field, and the identity for newcomers.
+    private static int playerCost(int mask, PlayerData player) {
+        int cost = 3 + 2 * Integer.bitCount(mask);
+        if ((mask & SnapshotDelta.PLAYER_NAME) != 0) {
+            cost += length(player.id) + length(player.name);
+        }
+        if ((mask & SnapshotDelta.PLAYER_CHARACTER) != 0) {
+            cost += length(player.characterType);
+        }
+        return cost;
+    }
+
+    // Strings may be null: the codec decodes a missing one that way.
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static int chickenCost(int mask) {
+        return 2 + 2 * Integer.bitCount(mask);
+    }
+}
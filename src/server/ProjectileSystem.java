@@ -0,0 +1,160 @@
+package server;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import shared.*;
+
+// Server-side bullets. Every tick each bullet moves along its path and the segment it swept is tested
+// against walls, players and chickens, so a fast bullet cannot skip through something thin between ticks.
+// The nearest thing the segment enters stops it. Bullets are 4x4 like on the client; the test uses their
+// top-left corner against targets grown by that size.
+public class ProjectileSystem {
+    private static final double SIZE = 4;
+    private static final double MARGIN = 64;
+    // The client moves a bullet BULLET_SPEED pixels per frame of its own loop.
+    private static final double SPEED_PER_MS = Config.BULLET_SPEED / (1000.0 / Config.FPS);
+
+    private final List<Projectile> projectiles = new ArrayList<>();
+    private long spawned = 0;
+    private long playerHits = 0;
+    private long chickenHits = 0;
+    private long wallHits = 0;
+
+    private static class Projectile {
+        int id;
+        int owner;
+        double x, y;
+        double dirX, dirY;
+        double travelled;
+        long lastUpdate;
+    }
+
+    // The shooter fired spawnTime ago from its point of view; the first update moves the bullet from then,
+    // so it is not a one-way trip behind where the shooter sees it.
+    public synchronized void spawn(BulletData bullet, int owner, long spawnTime) {
+        Projectile p = new Projectile();
+        p.id = bullet.id;
+        p.owner = owner;
+        p.x = bullet.x;
+        p.y = bullet.y;
+        p.dirX = Math.cos(bullet.angle);
+        p.dirY = Math.sin(bullet.angle);
+        p.lastUpdate = spawnTime;
+        projectiles.add(p);
+        spawned++;
+    }
+
+    // Returns the bullets that stopped in a player or a chicken this tick. Wall hits and bullets at the end
+    // of their range are dropped silently; clients reach the same verdict on their own.
+    public synchronized List<BulletHit> update(long now, List<Rectangle2D.Double> walls, Collection<PlayerData> players,
+            Collection<ChickenData> chickens, int mapWidth, int mapHeight) {
+        List<BulletHit> hits = new ArrayList<>();
+        for (int i = projectiles.size() - 1; i >= 0; i--) {
+            Projectile p = projectiles.get(i);
+            double step = Math.max(0, now - p.lastUpdate) * SPEED_PER_MS;
+            p.lastUpdate = now;
+            boolean expires = false;
+            if (p.travelled + step >= Config.BULLET_RANGE) {
+                step = Config.BULLET_RANGE - p.travelled;
+                expires = true;
+            }
+            double toX = p.x + p.dirX * step;
+            double toY = p.y + p.dirY * step;
+
+            double nearest = 1;
+            int kind = 0;
+            int target = 0;
+            for (Rectangle2D.Double wall : walls) {
+                double t = sweep(p.x, p.y, toX, toY, wall.x, wall.y, wall.width, wall.height);
+                if (t >= 0 && t < nearest) {
+                    nearest = t;
+                    kind = -1;
+                }
+            }
+            for (PlayerData player : players) {
+                if (player.handle == p.owner || player.hp <= 0) {
+                    continue;
+                }
+                double t = sweep(p.x, p.y, toX, toY, player.x, player.y, Config.PLAYER_WIDTH, Config.PLAYER_HEIGHT);
+                if (t >= 0 && t < nearest) {
+                    nearest = t;
+                    kind = BulletHit.PLAYER;
+                    target = player.handle;
+                }
+            }
+            for (ChickenData chicken : chickens) {
+                if (chicken.hp <= 0) {
+                    continue;
+                }
+                double t = sweep(p.x, p.y, toX, toY, chicken.x, chicken.y, Chicken.WIDTH, Chicken.HEIGHT);
+                if (t >= 0 && t < nearest) {
+                    nearest = t;
+                    kind = BulletHit.CHICKEN;
+                    target = chicken.id;
+                }
+            }
+
+            double hitX = p.x + (toX - p.x) * nearest;
+            double hitY = p.y + (toY - p.y) * nearest;
+            if (kind > 0) {
+                hits.add(new BulletHit(p.id, kind, target, (int) Math.round(hitX + SIZE / 2),
+                        (int) Math.round(hitY + SIZE / 2), p.owner));
+                if (kind == BulletHit.PLAYER) {
+                    playerHits++;
+                } else {
+                    chickenHits++;
+                }
+                projectiles.remove(i);
+            } else if (kind < 0) {
+                wallHits++;
+                projectiles.remove(i);
+            } else if (expires || toX < -MARGIN || toY < -MARGIN || toX > mapWidth + MARGIN || toY > mapHeight + MARGIN) {
+                projectiles.remove(i);
+            } else {
+                p.x = toX;
+                p.y = toY;
+                p.travelled += step;
+            }
+        }
+        return hits;
+    }
+
+    public synchronized int size() {
+        return projectiles.size();
+    }
+
+    public synchronized String summary() {
+        return String.format("Projectiles: %d live / %d fired | hits %dp %dc %dw", projectiles.size(), spawned,
+                playerHits, chickenHits, wallHits);
+    }
+
+    // Where along the segment from (x0, y0) to (x1, y1), as 0..1, a bullet first overlaps the box; -1 if it
+    // never does. A bullet that starts inside the box hits it at 0.
+    static double sweep(double x0, double y0, double x1, double y1, double bx, double by, double bw, double bh) {
+        double minX = bx - SIZE, maxX = bx + bw;
+        double minY = by - SIZE, maxY = by + bh;
+        double enter = 0, exit = 1;
+        double dx = x1 - x0, dy = y1 - y0;
+        if (dx == 0) {
+            if (x0 <= minX || x0 >= maxX) {
+                return -1;
+            }
+        } else {
+            double t0 = (minX - x0) / dx, t1 = (maxX - x0) / dx;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        }
+        if (dy == 0) {
+            if (y0 <= minY || y0 >= maxY) {
+                return -1;
+            }
+        } else {
+            double t0 = (minY - y0) / dy, t1 = (maxY - y0) / dy;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        }
+        return enter < exit ? enter : -1;
+    }
+}
@@ -19,6 +19,7 @@ public class ServerDebugUI extends JFrame {
     private DefaultTableModel messageTableModel;
     private JLabel statusLabel;
     private JLabel statsLabel;
+    private JLabel threadLabel;
     private Timer updateTimer;
     private GameServer server;
     private int messageCount = 0;
@@ -50,6 +51,9 @@ public class ServerDebugUI extends JFrame {
         topPanel.add(statusLabel);
         topPanel.add(Box.createHorizontalStrut(20));
         topPanel.add(statsLabel);
+        threadLabel = new JLabel("I/O: " + Config.SERVER_IO_MODE);
+        topPanel.add(Box.createHorizontalStrut(20));
+        topPanel.add(threadLabel);
         mainPanel.add(topPanel, BorderLayout.NORTH);
 
         
@@ -58,7 +62,7 @@ public class ServerDebugUI extends JFrame {
      
         JPanel playerPanel = new JPanel(new BorderLayout());
         playerPanel.setBorder(BorderFactory.createTitledBorder("Connected Players"));
-        String[] playerColumns = {"Player ID", "Name", "Character", "X", "Y", "HP", "Ammo", "Status", "God Mode"};
+        String[] playerColumns = {"Player ID", "Name", "Character", "X", "Y", "HP", "Ammo", "Status", "God Mode", "Link", "Send Queue", "Interest", "Budget"};
         playerTableModel = new DefaultTableModel(playerColumns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -140,10 +144,10 @@ public class ServerDebugUI extends JFrame {
     private void updatePlayerTable() {
         SwingUtilities.invokeLater(() -> {
             playerTableModel.setRowCount(0);
-            for (Map.Entry<String, PlayerData> entry : server.players.entrySet()) {
-                PlayerData player = entry.getValue();
+            for (PlayerData player : server.players.values()) {
                 String status = player.hp <= 0 ? "DEAD" : "ALIVE";
                 boolean godMode = godModePlayers.getOrDefault(player.id, false);
+                ClientConnection client = server.getClient(player.handle);
                 playerTableModel.addRow(new Object[]{
                     player.id,
                     player.name,
@@ -153,7 +157,11 @@ public class ServerDebugUI extends JFrame {
                     player.hp,
                     player.ammo,
                     status,
-                    godMode ? "ON" : "OFF"
+                    godMode ? "ON" : "OFF",
+                    client != null ? linkSummary(client) : "-",
+                    client != null ? client.getQueueStats() : "-",
+                    client != null ? client.getInterest().summary() : "-",
+                    client != null ? client.getScheduler().summary() : "-"
                 });
             }
         });
@@ -161,9 +169,19 @@ public class ServerDebugUI extends JFrame {
 
 
     private void updateStats() {
+        String threadSummary = ThreadStats.summary(server);
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        long maxHeap = runtime.maxMemory() / (1024 * 1024);
+        String streamSummary = MessageStream.objectStreamSummary();
+        String compressionSummary = FrameCompression.summary();
+        String lagSummary = server.getLagCompensator().summary() + " | " + server.getProjectiles().summary();
+        String tickSummary = server.getTickScheduler().summary();
         SwingUtilities.invokeLater(() -> {
-            statsLabel.setText(String.format("Messages: %d | Hits: %d | Bullets: %d | Players: %d", 
-                messageCount, hitCount, bulletCount, server.players.size()));
+            statsLabel.setText(String.format("Messages: %d | Hits: %d | Bullets: %d | Players: %d | Heap: %d/%d MB | %s | %s | %s | %s", 
+                messageCount, hitCount, bulletCount, server.players.size(), usedHeap, maxHeap, tickSummary, streamSummary,
+                compressionSummary, lagSummary));
+            threadLabel.setText(threadSummary);
         });
     }
 
@@ -207,6 +225,11 @@ public class ServerDebugUI extends JFrame {
     }
     
 
+    private String linkSummary(ClientConnection client) {
+        int rtt = client.getRtt();
+        return rtt < 0 ? client.getTransportStats() : client.getTransportStats() + " | " + rtt + "ms";
+    }
+
     private String getMessageTypeName(int type) {
         switch (type) {
             case NetworkMessage.PLAYER_JOIN: return "PLAYER_JOIN";
@@ -214,8 +237,17 @@ public class ServerDebugUI extends JFrame {
             case NetworkMessage.PLAYER_UPDATE: return "PLAYER_UPDATE";
             case NetworkMessage.BULLET_SPAWN: return "BULLET_SPAWN";
             case NetworkMessage.PLAYER_HIT: return "PLAYER_HIT";
+            case NetworkMessage.BULLET_HIT: return "BULLET_HIT";
             case NetworkMessage.PING: return "PING";
             case NetworkMessage.PONG: return "PONG";
+            case NetworkMessage.GAME_STATE: return "GAME_STATE";
+            case NetworkMessage.CHICKEN_STATE: return "CHICKEN_STATE";
+            case NetworkMessage.INPUT: return "INPUT";
+            case NetworkMessage.SNAPSHOT: return "SNAPSHOT";
+            case NetworkMessage.SNAPSHOT_DELTA: return "SNAPSHOT_DELTA";
+            case NetworkMessage.SNAPSHOT_ACK: return "SNAPSHOT_ACK";
+            case NetworkMessage.UDP_TOKEN: return "UDP_TOKEN";
+            case NetworkMessage.UDP_READY: return "UDP_READY";
             default: return "UNKNOWN";
         }
     }
@@ -0,0 +1,74 @@
+package server;
+
+import java.lang.management.ManagementFactory;
+import shared.*;
+
+public final class ThreadStats {
+    private static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+    private static final long CARRIER_COUNT_REFRESH_MS = 2000;
+
+    private static int carrierCount = 0;
+    private static long carrierCountTime = 0;
+
+    private ThreadStats() {
+    }
+
+    // Virtual threads are not reported by the ThreadMXBean, so this is platform threads only.
+    public static int platformThreadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    // Enumerating the root thread group lists the live threads without capturing a stack for each, unlike
+    // Thread.getAllStackTraces(). The debug UI refreshes often, so the count is also kept for a while.
+    public static synchronized int carrierThreadCount() {
+        long now = System.currentTimeMillis();
+        if (carrierCountTime != 0 && now - carrierCountTime < CARRIER_COUNT_REFRESH_MS) {
+            return carrierCount;
+        }
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+        int live = root.enumerate(threads, true);
+        int count = 0;
+        for (int i = 0; i < live; i++) {
+            if (CARRIER_THREAD_CLASS.equals(threads[i].getClass().getName())) {
+                count++;
+            }
+        }
+        carrierCount = count;
+        carrierCountTime = now;
+        return count;
+    }
+
+    public static int carrierParallelism() {
+        String configured = System.getProperty("jdk.virtualThreadScheduler.parallelism");
+        if (configured != null) {
+            try {
+                return Integer.parseInt(configured);
+            } catch (NumberFormatException e) {
+                // Fall through to the JDK default
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public static int connectionThreadCount(GameServer server) {
+        if (server.getNioServer() != null) {
+            return server.getNioServer().getIoThreadCount();
+        }
+        return ClientHandler.activeThreads.get();
+    }
+
+    public static String summary(GameServer server) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("I/O: ").append(Config.SERVER_IO_MODE);
+        sb.append(" | Conn threads: ").append(connectionThreadCount(server));
+        sb.append(" | Platform threads: ").append(platformThreadCount());
+        if (GameServer.isVirtualThreadMode()) {
+            sb.append(" | Carriers: ").append(carrierThreadCount()).append("/").append(carrierParallelism());
+        }
+        return sb.toString();
+    }
+}
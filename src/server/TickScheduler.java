@@ -0,0 +1,121 @@
+package server;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import shared.*;
+
+// Fixed-rate tick clock on System.nanoTime. Tick n is due at start + n * period no matter how long earlier
+// ticks took, so the rate does not drift. A late server runs its missed ticks back to back; once it is
+// more than Config.SERVER_MAX_CATCH_UP_TICKS behind, the rest are dropped so it does not spiral.
+// Waiting sleeps until Config.SERVER_TICK_SPIN_MICROS before the deadline and spins the rest, because a
+// sleep can overshoot by a millisecond or more, which is a large part of an 8ms tick.
+public class TickScheduler {
+    private static final int HISTORY = 1024;
+
+    private final int tickRate;
+    private final long periodNanos;
+    private final long spinNanos;
+    private long nextTick;
+
+    // Durations of the last HISTORY ticks, for the percentiles in summary().
+    private final long[] durations = new long[HISTORY];
+    private int durationCount = 0;
+    private int durationHead = 0;
+    private long ticks = 0;
+    private long overruns = 0;
+    private long late = 0;
+    private long dropped = 0;
+    private long windowStart;
+    private long windowTicks = 0;
+    private double measuredRate = 0;
+
+    public TickScheduler(int tickRate) {
+        this.tickRate = tickRate;
+        this.periodNanos = 1_000_000_000L / tickRate;
+        this.spinNanos = Config.SERVER_TICK_SPIN_MICROS * 1000L;
+        this.nextTick = System.nanoTime();
+        this.windowStart = nextTick;
+    }
+
+    // Blocks until the next tick is due and returns the nanoTime it started at.
+    public long awaitTick() throws InterruptedException {
+        long now = System.nanoTime();
+        long behind = now - nextTick;
+        if (behind < 0) {
+            waitUntil(nextTick);
+            now = System.nanoTime();
+        } else if (behind >= periodNanos) {
+            long missed = behind / periodNanos;
+            synchronized (this) {
+                late++;
+                if (missed > Config.SERVER_MAX_CATCH_UP_TICKS) {
+                    dropped += missed - Config.SERVER_MAX_CATCH_UP_TICKS;
+                    nextTick += (missed - Config.SERVER_MAX_CATCH_UP_TICKS) * periodNanos;
+                }
+            }
+        }
+        nextTick += periodNanos;
+        return now;
+    }
+
+    public synchronized void tickFinished(long startNanos) {
+        long end = System.nanoTime();
+        long duration = end - startNanos;
+        durations[durationHead] = duration;
+        durationHead = (durationHead + 1) % HISTORY;
+        durationCount = Math.min(durationCount + 1, HISTORY);
+        ticks++;
+        if (duration > periodNanos) {
+            overruns++;
+        }
+        windowTicks++;
+        if (end - windowStart >= 1_000_000_000L) {
+            measuredRate = windowTicks * 1e9 / (end - windowStart);
+            windowStart = end;
+            windowTicks = 0;
+        }
+    }
+
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    public synchronized long getOverruns() {
+        return overruns;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    // Late counts ticks that started after their deadline and had to catch up.
+    public synchronized String summary() {
+        long[] sorted = Arrays.copyOf(durations, durationCount);
+        Arrays.sort(sorted);
+        return String.format("Tick %.0f/%dHz | p50 %.2fms p99 %.2fms max %.2fms | %d over %d late %d dropped",
+                measuredRate, tickRate, percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                overruns, late, dropped);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private void waitUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > spinNanos) {
+            LockSupport.parkNanos(remaining - spinNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        while (System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import shared.*;
+
+// A client that talks to the server over UDP only; reliable events are resent until acked.
+public class UdpConnection extends ClientConnection {
+    private final UdpGateway gateway;
+    private final SocketAddress address;
+    private final ReliableEndpoint endpoint = new ReliableEndpoint();
+
+    public UdpConnection(UdpGateway gateway, SocketAddress address, GameServer server) {
+        super(server);
+        this.gateway = gateway;
+        this.address = address;
+    }
+
+    SocketAddress getAddress() {
+        return address;
+    }
+
+    @Override
+    public void send(OutboundMessage message) {
+        if (!connected) {
+            return;
+        }
+        if (NetworkMessage.isDroppable(message.message.type)) {
+            List<byte[]> unreliable = new ArrayList<>();
+            unreliable.add(message.frameBytes());
+            sendPacket(unreliable);
+        } else {
+            endpoint.queueReliable(message.frameBytes());
+            sendPacket(new ArrayList<>());
+        }
+    }
+
+    private void sendPacket(List<byte[]> unreliable) {
+        do {
+            byte[] packet = endpoint.buildPacket(unreliable, Config.UDP_MAX_PAYLOAD, System.currentTimeMillis());
+            gateway.send(address, packet);
+        } while (!unreliable.isEmpty());
+    }
+
+    // Called on the gateway thread.
+    void onPacket(byte[] bytes, int offset, int length) throws IOException {
+        for (NetworkMessage message : endpoint.receivePacket(bytes, offset, length, System.currentTimeMillis())) {
+            if (NetworkMessage.isDroppable(message.type) && !isNewest(message)) {
+                continue;
+            }
+            processMessage(message);
+        }
+    }
+
+    // Called periodically by the gateway to push out acks and due resends.
+    void service(long now) {
+        if (connected && endpoint.hasWork(now)) {
+            sendPacket(new ArrayList<>());
+        }
+    }
+
+    long getLastReceiveTime() {
+        return endpoint.getLastReceiveTime();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    protected boolean supportsUdp() {
+        return false;
+    }
+
+    @Override
+    public String getTransportStats() {
+        return "udp | " + endpoint.summary();
+    }
+
+    public ReliableEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    void close() {
+        if (connected) {
+            handleDisconnect();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package server;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import shared.*;
+
+public class UdpGateway {
+    // Cookies are valid for the current and the previous period.
+    private static final long COOKIE_PERIOD_MS = 10000;
+
+    private final GameServer server;
+    private final int port;
+    private final Map<Integer, ClientConnection> connections = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, UdpConnection> sessions = new ConcurrentHashMap<>();
+    private DatagramSocket socket;
+    private Thread receiveThread;
+    private Thread serviceThread;
+    private volatile boolean running = false;
+    private final byte[] cookieSecret = new byte[32];
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public UdpGateway(GameServer server, int port) {
+        this.server = server;
+        this.port = port;
+        new SecureRandom().nextBytes(cookieSecret);
+    }
+
+    public void start() throws SocketException {
+        socket = new DatagramSocket(port);
+        running = true;
+        receiveThread = new Thread(this::receiveLoop, "Udp-Gateway");
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+        serviceThread = new Thread(this::serviceLoop, "Udp-Service");
+        serviceThread.setDaemon(true);
+        serviceThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    // The token is handed out over TCP and proves which connection a datagram belongs to.
+    public int register(ClientConnection connection) {
+        while (true) {
+            int token = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+            if (connections.putIfAbsent(token, connection) == null) {
+                return token;
+            }
+        }
+    }
+
+    public void unregister(int token) {
+        connections.remove(token);
+    }
+
+    // Server to client datagrams carry a single frame exactly as it would be written on TCP.
+    public boolean send(SocketAddress address, byte[] frame) {
+        try {
+            socket.send(new DatagramPacket(frame, frame.length, address));
+            return true;
+        } catch (IOException e) {
+            System.err.println("UDP send failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public int getChannelCount() {
+        return connections.size();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Client to server datagrams start with a 4-byte token. Token 0 marks a UDP-only session, keyed by
+    // address and followed by a 4-byte cookie and a reliable packet; any other token is followed by one frame.
+    private void receiveLoop() {
+        byte[] buffer = new byte[65536];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (running) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                if (packet.getLength() < 8) {
+                    continue;
+                }
+                NetworkCodec.Input in = new NetworkCodec.Input(buffer, packet.getOffset(), packet.getLength());
+                int token = in.readInt();
+                if (token == 0) {
+                    onSessionPacket(packet);
+                    continue;
+                }
+                ClientConnection connection = connections.get(token);
+                if (connection == null || !connection.isConnected()) {
+                    continue;
+                }
+                int start = packet.getOffset() + 4;
+                NetworkMessage message = NetworkCodec.decodeFrame(buffer, start, packet.getLength() - 4);
+                connection.onDatagram(message, packet.getSocketAddress());
+            } catch (SocketException e) {
+                if (running) {
+                    System.err.println("UDP gateway error: " + e.getMessage());
+                }
+            } catch (IOException e) {
+                System.err.println("Dropping malformed datagram: " + e.getMessage());
+            }
+        }
+    }
+
+    // A session is only set up for an address that has echoed the cookie it was sent, so spoofed sources
+    // cannot make any. The cookie is a MAC of the address and the time, so nothing is stored until then.
+    // The 4-byte challenge is shorter than any reliable packet, which is how the client tells it apart,
+    // and shorter than the datagram that asked for it.
+    private void onSessionPacket(DatagramPacket packet) throws IOException {
+        SocketAddress address = packet.getSocketAddress();
+        UdpConnection session = sessions.get(address);
+        if (session == null) {
+            int cookie = ByteBuffer.wrap(packet.getData(), packet.getOffset() + 4, 4).getInt();
+            long period = System.currentTimeMillis() / COOKIE_PERIOD_MS;
+            if (cookie != cookie(packet, period) && cookie != cookie(packet, period - 1)) {
+                send(address, ByteBuffer.allocate(4).putInt(cookie(packet, period)).array());
+                return;
+            }
+            if (!admit(packet.getAddress())) {
+                return;
+            }
+            session = new UdpConnection(this, address, server);
+            sessions.put(address, session);
+            server.debugUI.logMessage("New client connected: " + address + " (udp)");
+        }
+        session.onPacket(packet.getData(), packet.getOffset() + 8, packet.getLength() - 8);
+    }
+
+    // Only the gateway thread adds sessions, so counting and then adding cannot race.
+    private boolean admit(InetAddress host) {
+        if (sessions.size() >= Config.UDP_MAX_SESSIONS) {
+            return false;
+        }
+        int fromHost = 0;
+        for (SocketAddress existing : sessions.keySet()) {
+            if (existing instanceof InetSocketAddress && host.equals(((InetSocketAddress) existing).getAddress())) {
+                fromHost++;
+            }
+        }
+        return fromHost < Config.UDP_MAX_SESSIONS_PER_HOST;
+    }
+
+    private int cookie(DatagramPacket packet, long period) {
+        Mac mac = macs.get();
+        mac.update(packet.getAddress().getAddress());
+        mac.update(ByteBuffer.allocate(12).putInt(packet.getPort()).putLong(period).array());
+        return ByteBuffer.wrap(mac.doFinal()).getInt();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(cookieSecret, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    // Same 5 second idle limit as the TCP engines.
+    private void serviceLoop() {
+        while (running) {
+            long now = System.currentTimeMillis();
+            for (UdpConnection session : sessions.values()) {
+                if (now - session.getLastReceiveTime() > 5000) {
+                    sessions.remove(session.getAddress());
+                    session.close();
+                    System.out.println("UDP session timed out: " + session.getAddress());
+                } else {
+                    session.service(now);
+                }
+            }
+            try {
+                Thread.sleep(Config.UDP_SERVICE_INTERVAL);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+}
@@ -5,6 +5,8 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
 public class Bullet {
+    // The server's id, once it has relayed the spawn; 0 for a local bullet it has not echoed yet.
+    public int id;
     public double x, y;
     public double dx, dy;
     public BufferedImage img;
@@ -52,6 +54,6 @@ public class Bullet {
     }
     
     public BulletData toBulletData() {
-        return new BulletData("bullet_" + System.currentTimeMillis(), x, y, Math.atan2(dy, dx));
+        return new BulletData(0, x, y, Math.atan2(dy, dx));
     }
 }
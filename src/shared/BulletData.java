@@ -5,20 +5,21 @@ import java.io.Serializable;
 public class BulletData implements Serializable {
     private static final long serialVersionUID = 1L;
     
-    public String id;
+    // Assigned by the server when it relays the spawn; clients send 0.
+    public int id;
     public double x, y;
     public double angle;
     public long timestamp;
 
     public BulletData() {
-        this.id = "";
+        this.id = 0;
         this.x = 0;
         this.y = 0;
         this.angle = 0;
         this.timestamp = System.currentTimeMillis();
     }
 
-    public BulletData(String id, double x, double y, double angle) {
+    public BulletData(int id, double x, double y, double angle) {
         this.id = id;
         this.x = x;
         this.y = y;
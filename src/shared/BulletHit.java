@@ -0,0 +1,30 @@
+package shared;
+
+import java.io.Serializable;
+
+// Payload of BULLET_HIT: a server-simulated bullet stopped in a player or a chicken. The target is the
+// player handle or chicken id; x and y are the whole-pixel impact point. The owner stays on the server.
+public class BulletHit implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int PLAYER = 1;
+    public static final int CHICKEN = 2;
+
+    public int bulletId;
+    public int kind;
+    public int target;
+    public int x, y;
+    public transient int owner;
+
+    public BulletHit() {
+    }
+
+    public BulletHit(int bulletId, int kind, int target, int x, int y, int owner) {
+        this.bulletId = bulletId;
+        this.kind = kind;
+        this.target = target;
+        this.x = x;
+        this.y = y;
+        this.owner = owner;
+    }
+}
@@ -9,6 +9,10 @@ import javax.imageio.ImageIO;
 import javax.sound.sampled.*;
 
 public class Chicken {
+    // Size of one animation frame, which is also the hitbox; the server tests bullets against it.
+    public static final int WIDTH = 32;
+    public static final int HEIGHT = 34;
+
     public int id;
     public int x, y;
     public int hp = Config.CHICKEN_HP;
@@ -21,8 +25,8 @@ public class Chicken {
     public boolean isIdle = true;
 
     private BufferedImage idleSheet, runSheet, hitSheet;
-    private int frameWidth = 32;
-    private int frameHeight = 34;
+    private int frameWidth = WIDTH;
+    private int frameHeight = HEIGHT;
     private int idleFrames = 13;
     private int runFrames = 14;
     private int hitFrames = 5;
@@ -25,7 +25,7 @@ public class ChickenData implements Serializable {
         this.isHit = false;
         this.isIdle = true;
         this.currentFrame = 0;
-        this.respawnTimer = Config.CHICKEN_RESPAWN_TIME * 60;
+        this.respawnTimer = Config.CHICKEN_RESPAWN_TIME * Config.CHICKEN_UPDATE_RATE;
     }
     
     public ChickenData(int id, int x, int y) {
@@ -38,6 +38,21 @@ public class ChickenData implements Serializable {
         this.isHit = false;
         this.isIdle = true;
         this.currentFrame = 0;
-        this.respawnTimer = Config.CHICKEN_RESPAWN_TIME * 60;
+        this.respawnTimer = Config.CHICKEN_RESPAWN_TIME * Config.CHICKEN_UPDATE_RATE;
+    }
+
+    public ChickenData copy() {
+        ChickenData c = new ChickenData();
+        c.id = id;
+        c.x = x;
+        c.y = y;
+        c.hp = hp;
+        c.angle = angle;
+        c.isMoving = isMoving;
+        c.isHit = isHit;
+        c.isIdle = isIdle;
+        c.currentFrame = currentFrame;
+        c.respawnTimer = respawnTimer;
+        return c;
     }
 }
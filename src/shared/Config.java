@@ -4,6 +4,8 @@ public class Config {
     public static final int FPS = 120;
 
     public static final int PLAYER_SPEED = 1;
+    public static final int PLAYER_WIDTH = 33;
+    public static final int PLAYER_HEIGHT = 43;
     public static final int DASH_SPEED = 18;
     public static final int DASH_DISTANCE = 300;
     public static final int DASH_COOLDOWN = 1000;
@@ -25,8 +27,86 @@ public class Config {
     public static boolean USE_ACCELERATED_GRAPHICS = true;
     public static boolean ENABLE_OPENGL = false;
 
-    public static int NETWORK_UPDATE_RATE = 2;
+    public static String MAP_PATH = "assets/map/mappgameeeee.tmx";
+    public static int CLIENT_SEND_RATE = 30;
+    public static boolean USE_INPUT_COMMANDS = true;
+    // Each input message repeats up to this many unacknowledged inputs so a lost packet costs nothing.
+    public static int INPUT_REDUNDANCY = 16;
+    // How many milliseconds of inputs the server will apply at once after a late batch.
+    public static int INPUT_BURST_MS = 250;
+    public static int SNAPSHOT_RATE = 20;
+    // Server simulation rate, independent of the client's FPS. Chickens step at CHICKEN_UPDATE_RATE whatever it is.
+    // A late server catches up to MAX_CATCH_UP_TICKS ticks back to back and drops the rest; it sleeps until
+    // SPIN_MICROS before each tick and spins from there.
+    public static int SERVER_TICK_RATE = 120;
+    public static int SERVER_MAX_CATCH_UP_TICKS = 5;
+    public static int SERVER_TICK_SPIN_MICROS = 1500;
+    public static int SEND_BATCH_DELAY_MS = 0;
+    public static int SEND_QUEUE_BUDGET = 1000;
+    public static boolean DISCONNECT_SLOW_CLIENTS = true;
+    public static boolean USE_DELTA_SNAPSHOTS = true;
+    public static int SNAPSHOT_HISTORY = 32;
+    public static boolean USE_BINARY_CODEC = true;
+    // Object streams only: 0 resets the handle table after every flushed batch, N after every N messages, -1 never.
+    public static int OBJECT_STREAM_RESET_INTERVAL = 0;
+    public static boolean QUANTIZE_STATE = true;
+    // Message bodies at least this big are deflated with the preset dictionary; see FrameCompression.
+    public static boolean USE_COMPRESSION = true;
+    public static int COMPRESSION_THRESHOLD = 128;
+    public static int COMPRESSION_LEVEL = 6;
+    public static int COMPRESSION_MAX_FRAME = 1 << 20;
+    public static String COMPRESSION_DICTIONARY_PATH = "assets/net/frames.dict";
+    // Set to a file name to record uncompressed bodies above the threshold for DictionaryBuilder.
+    public static String TRAFFIC_RECORD_PATH = "";
+    public static String SERVER_IO_MODE = "threads";
+    public static int NIO_IO_THREADS = 2;
+    public static int NIO_READ_BUFFER_SIZE = 4096;
+    public static boolean USE_UDP = true;
+    public static int UDP_MAX_PAYLOAD = 1200;
+    public static int UDP_SERVICE_INTERVAL = 20;
+    // UDP-only sessions, in total and from one host; a new one is only made after a cookie round trip.
+    public static int UDP_MAX_SESSIONS = 64;
+    public static int UDP_MAX_SESSIONS_PER_HOST = 4;
+    public static String CLIENT_TRANSPORT = "tcp";
     public static double PLAYER_LERP_FACTOR = 0.8;
+    // Remote players and chickens are drawn this far behind the newest snapshot; two snapshot intervals
+    // at SNAPSHOT_RATE 20 means a single lost or late packet still leaves a sample to move towards.
+    public static boolean USE_INTERPOLATION = true;
+    public static int INTERPOLATION_DELAY_MS = 100;
+    public static int MAX_EXTRAPOLATION_MS = 100;
+    // Each client only receives the players and chickens within INTEREST_RADIUS of its own player;
+    // the view is 1280x768, so the radius leaves some margin beyond the screen corners.
+    public static boolean USE_INTEREST_MANAGEMENT = true;
+    public static int INTEREST_CELL_SIZE = 256;
+    public static int INTEREST_RADIUS = 1000;
+    public static int INTEREST_HYSTERESIS = 150;
+    // Also skip entities behind walls, using the .pvs file PvsBuilder writes next to the map.
+    public static boolean USE_PVS = true;
+    public static int PVS_REGION_TILES = 4;
+    // Bytes per client per snapshot; the default keeps a snapshot inside one UDP datagram. 0 sends everything.
+    public static int SNAPSHOT_BYTE_BUDGET = 1100;
+    public static int PRIORITY_DISTANCE_FALLOFF = 300;
+    public static double PRIORITY_ATTACKER_BOOST = 4.0;
+    public static int PRIORITY_ATTACKER_MS = 3000;
+    // Clock sync pings every FAST interval until FAST_SAMPLES round trips are in, then settles to INTERVAL.
+    public static int TIME_SYNC_INTERVAL_MS = 1000;
+    public static int TIME_SYNC_FAST_INTERVAL_MS = 250;
+    public static int TIME_SYNC_FAST_SAMPLES = 8;
+    // The server checks each reported hit against where the victim was when the shooter saw it, at most
+    // MAX_MS ago. SLACK pixels around the hitbox cover the bullet's size and interpolation rounding.
+    public static boolean USE_LAG_COMPENSATION = true;
+    public static int LAG_COMPENSATION_MAX_MS = 500;
+    public static int LAG_COMPENSATION_TOLERANCE_MS = 100;
+    public static int LAG_COMPENSATION_HIT_SLACK = 12;
+    public static int LAG_COMPENSATION_SLOTS = 64;
+    // The server simulates bullets and decides what they hit; clients only draw them and play BULLET_HIT events.
+    public static boolean USE_SERVER_PROJECTILES = true;
+    // Bullets leave this far from the shooter's centre. The server pulls any spawn further than that plus
+    // ORIGIN_SLACK from where it has the shooter back onto that circle, and takes one shot per
+    // PLAYER_SHOOT_DELAY frames, letting one arrive up to SHOT_JITTER_MS early.
+    public static int BULLET_MUZZLE_DISTANCE = 20;
+    public static int BULLET_ORIGIN_SLACK = 32;
+    public static int SHOT_JITTER_MS = 100;
     public static int RESPAWN_TIME = 5;
     public static int RESPAWN_SAFE_DISTANCE = 100;
     public static int RESPAWN_ATTEMPTS = 50;
@@ -262,6 +342,8 @@ public class Config {
     public static int CHICKEN_SPAWN_COUNT = 8;
     public static int CHICKEN_RESPAWN_TIME = 300;
     public static int CHICKEN_MOVEMENT_SPEED = 1;
+    // Chicken steps per second: movement speed, turning, animation and the respawn timer are all per step.
+    public static int CHICKEN_UPDATE_RATE = 60;
     public static int CHICKEN_HEAL_AMOUNT = 30;
 
     public static int[][] CHICKEN_SPAWN_ZONES = {
@@ -0,0 +1,135 @@
+package shared;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflate for message bodies above Config.COMPRESSION_THRESHOLD, primed with a preset dictionary of typical
+// traffic so that even a few hundred bytes shrink. Both ends must load the same dictionary; the zlib header
+// carries its checksum, so a mismatch fails loudly instead of decoding garbage.
+public final class FrameCompression {
+    // Process-wide counters for the debug readouts. Raw and compressed bytes only cover frames that were attempted.
+    public static final AtomicLong framesCompressed = new AtomicLong(0);
+    public static final AtomicLong framesNotSmaller = new AtomicLong(0);
+    public static final AtomicLong rawBytes = new AtomicLong(0);
+    public static final AtomicLong compressedBytes = new AtomicLong(0);
+    public static final AtomicLong compressNanos = new AtomicLong(0);
+    public static final AtomicLong inflateNanos = new AtomicLong(0);
+
+    private static final byte[] dictionary = loadDictionary(Config.COMPRESSION_DICTIONARY_PATH);
+    private static final ThreadLocal<Deflater> deflaters =
+            ThreadLocal.withInitial(() -> new Deflater(Config.COMPRESSION_LEVEL));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[4096]);
+    private static DataOutputStream recording;
+
+    private FrameCompression() {
+    }
+
+    // Returns null unless deflating saves more than the varint raw length it costs to send.
+    static byte[] compress(byte[] raw, int offset, int length) {
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary.length > 0) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(raw, offset, length);
+        deflater.finish();
+        byte[] buffer = scratch.get();
+        if (buffer.length < length + 64) {
+            buffer = new byte[length + 64];
+            scratch.set(buffer);
+        }
+        int size = 0;
+        while (!deflater.finished() && size < buffer.length) {
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        compressNanos.addAndGet(System.nanoTime() - start);
+        rawBytes.addAndGet(length);
+        if (!deflater.finished() || size + 5 >= length) {
+            framesNotSmaller.incrementAndGet();
+            compressedBytes.addAndGet(length);
+            return null;
+        }
+        framesCompressed.incrementAndGet();
+        compressedBytes.addAndGet(size);
+        return Arrays.copyOf(buffer, size);
+    }
+
+    static byte[] decompress(byte[] data, int offset, int length, int rawLength) throws IOException {
+        if (rawLength < 0 || rawLength > Config.COMPRESSION_MAX_FRAME) {
+            throw new StreamCorruptedException("Bad compressed frame length: " + rawLength);
+        }
+        long start = System.nanoTime();
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        byte[] raw = new byte[rawLength];
+        try {
+            int size = inflater.inflate(raw);
+            if (inflater.needsDictionary()) {
+                if (dictionary.length == 0 || inflater.getAdler() != adler(dictionary)) {
+                    throw new StreamCorruptedException("Frame was compressed with a different dictionary");
+                }
+                inflater.setDictionary(dictionary);
+                size += inflater.inflate(raw, size, rawLength - size);
+            }
+            if (size != rawLength || !inflater.finished()) {
+                throw new StreamCorruptedException("Compressed frame inflated to " + size + " of " + rawLength + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupt compressed frame: " + e.getMessage());
+        }
+        inflateNanos.addAndGet(System.nanoTime() - start);
+        return raw;
+    }
+
+    // With Config.TRAFFIC_RECORD_PATH set, bodies that are big enough to compress are appended to that file
+    // as length-prefixed records. DictionaryBuilder turns a recording into a new dictionary.
+    static synchronized void record(byte[] raw, int offset, int length) {
+        if (Config.TRAFFIC_RECORD_PATH.isEmpty()) {
+            return;
+        }
+        try {
+            if (recording == null) {
+                recording = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(Config.TRAFFIC_RECORD_PATH, true)));
+            }
+            recording.writeInt(length);
+            recording.write(raw, offset, length);
+            recording.flush();
+        } catch (IOException e) {
+            System.err.println("Traffic recording failed: " + e.getMessage());
+            Config.TRAFFIC_RECORD_PATH = "";
+        }
+    }
+
+    public static String summary() {
+        long raw = rawBytes.get();
+        long compressed = compressedBytes.get();
+        long frames = framesCompressed.get() + framesNotSmaller.get();
+        return String.format("Deflate: %d/%d frames | %.0f%% of %d KB | %.1fus/frame",
+                framesCompressed.get(), frames, raw == 0 ? 100.0 : compressed * 100.0 / raw, raw / 1024,
+                frames == 0 ? 0.0 : compressNanos.get() / 1000.0 / frames);
+    }
+
+    private static byte[] loadDictionary(String path) {
+        try {
+            return Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            System.err.println("No compression dictionary at " + path + ", deflating without one");
+            return new byte[0];
+        }
+    }
+
+    private static int adler(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return (int) adler.getValue();
+    }
+}
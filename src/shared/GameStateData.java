@@ -0,0 +1,21 @@
+package shared;
+
+import java.io.Serializable;
+
+// Everything a joining client needs in one message; the snapshot doubles as its first delta baseline.
+public class GameStateData implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public WorldSnapshot snapshot;
+    public WeaponData[] weapons;
+
+    public GameStateData() {
+        this.snapshot = new WorldSnapshot();
+        this.weapons = new WeaponData[0];
+    }
+
+    public GameStateData(WorldSnapshot snapshot, WeaponData[] weapons) {
+        this.snapshot = snapshot;
+        this.weapons = weapons;
+    }
+}
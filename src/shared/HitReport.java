@@ -0,0 +1,25 @@
+package shared;
+
+import java.io.Serializable;
+
+// Payload of PLAYER_HIT from the shooter: who was hit, where the bullet was, and the server time of the
+// world the shooter was looking at, so the server can rewind the victim to that moment before agreeing.
+public class HitReport implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public String playerId;
+    public int damage;
+    public long viewTime;
+    public double x, y;
+
+    public HitReport() {
+    }
+
+    public HitReport(String playerId, int damage, long viewTime, double x, double y) {
+        this.playerId = playerId;
+        this.damage = damage;
+        this.viewTime = viewTime;
+        this.x = x;
+        this.y = y;
+    }
+}
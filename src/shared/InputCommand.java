@@ -0,0 +1,38 @@
+package shared;
+
+import java.io.Serializable;
+
+// One client frame of input. The server replays these in sequence order instead of trusting client positions.
+public class InputCommand implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int UP = 1;
+    public static final int DOWN = 1 << 1;
+    public static final int LEFT = 1 << 2;
+    public static final int RIGHT = 1 << 3;
+    public static final int FIRE = 1 << 4;
+    public static final int DASH = 1 << 5;
+    // Weapon pickups and ammo are still decided on the client, so their visible state rides along.
+    public static final int ARMED = 1 << 6;
+    public static final int RELOADING = 1 << 7;
+
+    public static final int ANGLE_BITS = 16;
+
+    public int sequence;
+    public int buttons;
+    public double angle;
+
+    public InputCommand() {
+    }
+
+    // The angle is snapped to what the wire can carry so client prediction sees the same value as the server.
+    public InputCommand(int sequence, int buttons, double angle) {
+        this.sequence = sequence;
+        this.buttons = buttons;
+        this.angle = NetworkCodec.dequantizeAngle(NetworkCodec.quantizeAngle(angle, ANGLE_BITS), ANGLE_BITS);
+    }
+
+    public boolean has(int button) {
+        return (buttons & button) != 0;
+    }
+}
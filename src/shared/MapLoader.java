@@ -119,6 +119,15 @@ public class MapLoader {
     }
 
     public void load(String path) throws Exception {
+        load(path, true);
+    }
+
+    // The server only needs the map size and collision boxes, so it skips the tilesets and layers.
+    public void loadCollisions(String path) throws Exception {
+        load(path, false);
+    }
+
+    private void load(String path, boolean graphics) throws Exception {
         Path tmxPath = Paths.get(path);
         Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
                 .parse(Files.newInputStream(tmxPath));
@@ -131,7 +140,28 @@ public class MapLoader {
         mapPixelW = mapWidthTiles * tileWidth;
         mapPixelH = mapHeightTiles * tileHeight;
 
-        
+        if (graphics) {
+            loadGraphics(map, tmxPath);
+        }
+
+        NodeList objGroups = map.getElementsByTagName("objectgroup");
+        for (int i = 0; i < objGroups.getLength(); i++) {
+            Element og = (Element) objGroups.item(i);
+            if (!"Collision".equalsIgnoreCase(og.getAttribute("name")))
+                continue;
+            NodeList objs = og.getElementsByTagName("object");
+            for (int j = 0; j < objs.getLength(); j++) {
+                Element o = (Element) objs.item(j);
+                double x = Double.parseDouble(o.getAttribute("x"));
+                double y = Double.parseDouble(o.getAttribute("y"));
+                double w = Double.parseDouble(o.getAttribute("width"));
+                double h = Double.parseDouble(o.getAttribute("height"));
+                collisions.add(new Rectangle2D.Double(x, y, w, h));
+            }
+        }
+    }
+
+    private void loadGraphics(Element map, Path tmxPath) throws Exception {
         NodeList tilesetNodes = map.getElementsByTagName("tileset");
         for (int i = 0; i < tilesetNodes.getLength(); i++) {
             Element ts = (Element) tilesetNodes.item(i);
@@ -213,21 +243,5 @@ public class MapLoader {
             L.gids = gids;
             layers.add(L);
         }
-
-        NodeList objGroups = map.getElementsByTagName("objectgroup");
-        for (int i = 0; i < objGroups.getLength(); i++) {
-            Element og = (Element) objGroups.item(i);
-            if (!"Collision".equalsIgnoreCase(og.getAttribute("name")))
-                continue;
-            NodeList objs = og.getElementsByTagName("object");
-            for (int j = 0; j < objs.getLength(); j++) {
-                Element o = (Element) objs.item(j);
-                double x = Double.parseDouble(o.getAttribute("x"));
-                double y = Double.parseDouble(o.getAttribute("y"));
-                double w = Double.parseDouble(o.getAttribute("width"));
-                double h = Double.parseDouble(o.getAttribute("height"));
-                collisions.add(new Rectangle2D.Double(x, y, w, h));
-            }
-        }
     }
 }
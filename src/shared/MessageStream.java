@@ -0,0 +1,187 @@
+package shared;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MessageStream implements Closeable {
+    public static final int MODE_OBJECT = 0;
+    public static final int MODE_BINARY = 1;
+
+    // Object mode bookkeeping across all streams in this process, for the debug readouts.
+    public static final AtomicLong objectResets = new AtomicLong(0);
+    public static final AtomicLong objectResetNanos = new AtomicLong(0);
+    public static final AtomicLong objectBytesWritten = new AtomicLong(0);
+
+    private final Socket socket;
+    private final int mode;
+    private ObjectOutputStream objectOut;
+    private ObjectInputStream objectIn;
+    private DataOutputStream dataOut;
+    private DataInputStream dataIn;
+    private final NetworkCodec.Output encodeBuffer = new NetworkCodec.Output(256);
+    private byte[] readBuffer = new byte[256];
+    private int messagesSinceReset = 0;
+
+    private MessageStream(Socket socket, int mode) throws IOException {
+        this.socket = socket;
+        this.mode = mode;
+        if (mode == MODE_BINARY) {
+            dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            dataIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        } else {
+            // Buffered so a batch of objects reaches the socket in one write on flush.
+            objectOut = new ObjectOutputStream(new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream())));
+            objectOut.flush();
+            objectIn = new ObjectInputStream(socket.getInputStream());
+        }
+    }
+
+    // The client picks the wire format with a single byte before any stream header is written.
+    public static MessageStream connect(Socket socket, int mode) throws IOException {
+        OutputStream raw = socket.getOutputStream();
+        raw.write(mode);
+        raw.flush();
+        return new MessageStream(socket, mode);
+    }
+
+    public static MessageStream accept(Socket socket) throws IOException {
+        int mode = socket.getInputStream().read();
+        if (mode != MODE_OBJECT && mode != MODE_BINARY) {
+            throw new StreamCorruptedException("Unknown stream mode: " + mode);
+        }
+        return new MessageStream(socket, mode);
+    }
+
+    public static int defaultMode() {
+        return Config.USE_BINARY_CODEC ? MODE_BINARY : MODE_OBJECT;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public void writeMessage(NetworkMessage message) throws IOException {
+        if (mode == MODE_BINARY) {
+            encodeBuffer.reset();
+            NetworkCodec.encode(message, encodeBuffer);
+            writeVarInt(encodeBuffer.size());
+            dataOut.write(encodeBuffer.array(), 0, encodeBuffer.size());
+        } else {
+            objectOut.writeObject(message);
+            messagesSinceReset++;
+            int interval = Config.OBJECT_STREAM_RESET_INTERVAL;
+            if (interval > 0 && messagesSinceReset >= interval) {
+                resetObjectStream();
+            }
+        }
+    }
+
+    // Clears the handle table on both ends so old objects can be collected and mutated ones are re-sent in full.
+    private void resetObjectStream() throws IOException {
+        long start = System.nanoTime();
+        objectOut.reset();
+        messagesSinceReset = 0;
+        objectResets.incrementAndGet();
+        objectResetNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    // Writes a frame produced by NetworkCodec.encodeFrame without re-encoding it.
+    public void writeFrame(byte[] frame) throws IOException {
+        if (mode != MODE_BINARY) {
+            throw new IllegalStateException("Pre-encoded frames require the binary codec");
+        }
+        dataOut.write(frame);
+    }
+
+    public void flush() throws IOException {
+        if (mode == MODE_BINARY) {
+            dataOut.flush();
+        } else {
+            if (Config.OBJECT_STREAM_RESET_INTERVAL == 0 && messagesSinceReset > 0) {
+                resetObjectStream();
+            }
+            objectOut.flush();
+        }
+    }
+
+    public NetworkMessage readMessage() throws IOException, ClassNotFoundException {
+        if (mode == MODE_BINARY) {
+            int length = readVarInt();
+            if (length < 0 || length > NetworkCodec.MAX_FRAME_SIZE) {
+                throw new StreamCorruptedException("Bad frame length: " + length);
+            }
+            if (length > readBuffer.length) {
+                readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+            }
+            dataIn.readFully(readBuffer, 0, length);
+            return NetworkCodec.decode(readBuffer, 0, length);
+        }
+
+        Object received = objectIn.readObject();
+        if (received instanceof NetworkMessage) {
+            return (NetworkMessage) received;
+        }
+        System.err.println("Received non-NetworkMessage object: " + received.getClass());
+        return null;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dataOut.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dataOut.write(value);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = dataIn.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed frame length");
+    }
+
+    public static String objectStreamSummary() {
+        long resets = objectResets.get();
+        long avgMicros = resets == 0 ? 0 : objectResetNanos.get() / resets / 1000;
+        return String.format("Obj resets: %d (%d us avg) | Obj bytes: %d KB", resets, avgMicros, objectBytesWritten.get() / 1024);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            objectBytesWritten.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            objectBytesWritten.addAndGet(len);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mode == MODE_BINARY) {
+                dataIn.close();
+                dataOut.close();
+            } else {
+                objectIn.close();
+                objectOut.close();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,892 @@
+package shared;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class NetworkCodec {
+    // Largest frame body either end will read; a longer length means a corrupt or hostile stream.
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+    public static final byte TAG_NULL = 0;
+    public static final byte TAG_STRING = 1;
+    public static final byte TAG_STRING_ARRAY = 2;
+    public static final byte TAG_PLAYER = 3;
+    public static final byte TAG_BULLET = 4;
+    public static final byte TAG_CHICKEN = 5;
+    public static final byte TAG_BOT = 6;
+    public static final byte TAG_SNAPSHOT = 7;
+    public static final byte TAG_SNAPSHOT_DELTA = 8;
+    public static final byte TAG_PLAYER_QUANTIZED = 9;
+    public static final byte TAG_CHICKEN_QUANTIZED = 10;
+    public static final byte TAG_SNAPSHOT_QUANTIZED = 11;
+    public static final byte TAG_SNAPSHOT_DELTA_QUANTIZED = 12;
+    public static final byte TAG_GAME_STATE = 13;
+    public static final byte TAG_GAME_STATE_QUANTIZED = 14;
+    public static final byte TAG_CHICKEN_ARRAY = 15;
+    public static final byte TAG_CHICKEN_ARRAY_QUANTIZED = 16;
+    public static final byte TAG_INPUTS = 17;
+    public static final byte TAG_TIME_SYNC = 18;
+    public static final byte TAG_HIT_REPORT = 19;
+    public static final byte TAG_BULLET_HIT = 20;
+
+    // Set on the type byte when the rest of the body is deflated; a varint raw length follows it.
+    private static final int TYPE_COMPRESSED = 0x80;
+
+    // Positions travel as unsigned 13.3 fixed point, which covers 0..8191.875 px in 0.125 px steps.
+    private static final double POSITION_SCALE = 8.0;
+    private static final int PLAYER_ANGLE_BITS = 10;
+    private static final int CHICKEN_ANGLE_BITS = 8;
+
+    private static final int FLAG_SHOOTING = 1;
+    private static final int FLAG_RELOADING = 1 << 1;
+    private static final int FLAG_HAS_WEAPON = 1 << 2;
+    private static final int FLAG_GOD_MODE = 1 << 3;
+    private static final int FLAG_DEAD = 1 << 4;
+
+    private static final int FLAG_CHICKEN_MOVING = 1;
+    private static final int FLAG_CHICKEN_HIT = 1 << 1;
+    private static final int FLAG_CHICKEN_IDLE = 1 << 2;
+
+    private NetworkCodec() {
+    }
+
+    public static byte[] encode(NetworkMessage message) {
+        Output out = new Output(64);
+        encode(message, out);
+        return out.toByteArray();
+    }
+
+    // Length-prefixed frame as written on the stream by MessageStream and the NIO engine.
+    public static byte[] encodeFrame(NetworkMessage message) {
+        Output body = new Output(64);
+        encode(message, body);
+        Output frame = new Output(body.size() + 5);
+        frame.writeVarInt(body.size());
+        frame.writeBytes(body.array(), 0, body.size());
+        return frame.toByteArray();
+    }
+
+    public static void encode(NetworkMessage message, Output out) {
+        int start = out.size();
+        out.writeByte(message.type);
+        out.writeVarInt(message.sequence);
+        out.writeVarLong(message.timestamp);
+        out.writeString(message.playerId);
+        writePayload(message.data, out, carriesIdentity(message.type));
+        if (out.size() - start >= Config.COMPRESSION_THRESHOLD) {
+            FrameCompression.record(out.array(), start, out.size() - start);
+            if (Config.USE_COMPRESSION) {
+                compress(out, start);
+            }
+        }
+    }
+
+    // Everything after the type byte is deflated; the frame is left alone if that would not save anything.
+    private static void compress(Output out, int start) {
+        int rawLength = out.size() - start - 1;
+        byte[] compressed = FrameCompression.compress(out.array(), start + 1, rawLength);
+        if (compressed == null) {
+            return;
+        }
+        int type = out.array()[start] & 0xFF;
+        out.truncate(start);
+        out.writeByte(type | TYPE_COMPRESSED);
+        out.writeVarInt(rawLength);
+        out.writeBytes(compressed, 0, compressed.length);
+    }
+
+    public static NetworkMessage decode(byte[] bytes, int offset, int length) throws IOException {
+        Input in = new Input(bytes, offset, length);
+        NetworkMessage message = new NetworkMessage();
+        message.type = in.readUnsignedByte();
+        if ((message.type & TYPE_COMPRESSED) != 0) {
+            message.type &= ~TYPE_COMPRESSED;
+            int rawLength = in.readVarInt();
+            byte[] raw = FrameCompression.decompress(bytes, in.position(), in.remaining(), rawLength);
+            in = new Input(raw, 0, raw.length);
+        }
+        message.sequence = in.readVarInt();
+        message.timestamp = in.readVarLong();
+        message.playerId = in.readString();
+        message.data = readPayload(in);
+        return message;
+    }
+
+    public static NetworkMessage decodeFrame(byte[] bytes, int offset, int length) throws IOException {
+        Input in = new Input(bytes, offset, length);
+        int bodyLength = in.readVarInt();
+        int headerLength = length - in.remaining();
+        if (bodyLength > in.remaining()) {
+            throw new StreamCorruptedException("Truncated frame");
+        }
+        return decode(bytes, offset + headerLength, bodyLength);
+    }
+
+    // Player names and string ids are only sent when a player is introduced; after that the handle is enough.
+    private static boolean carriesIdentity(int type) {
+        return type == NetworkMessage.PLAYER_JOIN || type == NetworkMessage.GAME_STATE;
+    }
+
+    // Every payload is prefixed with a one-byte tag so decoding never needs reflection.
+    private static void writePayload(Object data, Output out, boolean identities) {
+        if (data == null) {
+            out.writeByte(TAG_NULL);
+        } else if (data instanceof String) {
+            out.writeByte(TAG_STRING);
+            out.writeString((String) data);
+        } else if (data instanceof String[]) {
+            String[] values = (String[]) data;
+            out.writeByte(TAG_STRING_ARRAY);
+            out.writeVarInt(values.length);
+            for (String value : values) {
+                out.writeString(value);
+            }
+        } else if (data instanceof PlayerData) {
+            out.writeByte(Config.QUANTIZE_STATE ? TAG_PLAYER_QUANTIZED : TAG_PLAYER);
+            writePlayer((PlayerData) data, out, Config.QUANTIZE_STATE, identities);
+        } else if (data instanceof BulletData) {
+            out.writeByte(TAG_BULLET);
+            writeBullet((BulletData) data, out);
+        } else if (data instanceof ChickenData) {
+            out.writeByte(Config.QUANTIZE_STATE ? TAG_CHICKEN_QUANTIZED : TAG_CHICKEN);
+            writeChicken((ChickenData) data, out, Config.QUANTIZE_STATE);
+        } else if (data instanceof ChickenData[]) {
+            ChickenData[] chickens = (ChickenData[]) data;
+            out.writeByte(Config.QUANTIZE_STATE ? TAG_CHICKEN_ARRAY_QUANTIZED : TAG_CHICKEN_ARRAY);
+            out.writeVarInt(chickens.length);
+            for (ChickenData chicken : chickens) {
+                writeChicken(chicken, out, Config.QUANTIZE_STATE);
+            }
+        } else if (data instanceof InputCommand[]) {
+            out.writeByte(TAG_INPUTS);
+            writeInputs((InputCommand[]) data, out);
+        } else if (data instanceof TimeSync) {
+            TimeSync sync = (TimeSync) data;
+            out.writeByte(TAG_TIME_SYNC);
+            out.writeVarLong(sync.clientSendTime);
+            out.writeVarLong(sync.serverReceiveTime);
+            out.writeVarInt(sync.serverTick);
+        } else if (data instanceof HitReport) {
+            HitReport hit = (HitReport) data;
+            out.writeByte(TAG_HIT_REPORT);
+            out.writeString(hit.playerId);
+            out.writeVarInt(hit.damage);
+            out.writeVarLong(hit.viewTime);
+            out.writeFloat((float) hit.x);
+            out.writeFloat((float) hit.y);
+        } else if (data instanceof BulletHit) {
+            BulletHit hit = (BulletHit) data;
+            out.writeByte(TAG_BULLET_HIT);
+            out.writeVarInt(hit.bulletId);
+            out.writeByte(hit.kind);
+            out.writeVarInt(hit.target);
+            out.writeZigZag(hit.x);
+            out.writeZigZag(hit.y);
+        } else if (data instanceof BotData) {
+            out.writeByte(TAG_BOT);
+            writeBot((BotData) data, out);
+        } else if (data instanceof WorldSnapshot) {
+            out.writeByte(Config.QUANTIZE_STATE ? TAG_SNAPSHOT_QUANTIZED : TAG_SNAPSHOT);
+            writeSnapshot((WorldSnapshot) data, out, Config.QUANTIZE_STATE, identities);
+        } else if (data instanceof SnapshotDelta) {
+            out.writeByte(Config.QUANTIZE_STATE ? TAG_SNAPSHOT_DELTA_QUANTIZED : TAG_SNAPSHOT_DELTA);
+            writeSnapshotDelta((SnapshotDelta) data, out, Config.QUANTIZE_STATE);
+        } else if (data instanceof GameStateData) {
+            out.writeByte(Config.QUANTIZE_STATE ? TAG_GAME_STATE_QUANTIZED : TAG_GAME_STATE);
+            writeGameState((GameStateData) data, out, Config.QUANTIZE_STATE);
+        } else {
+            throw new IllegalArgumentException("Unsupported payload type: " + data.getClass().getName());
+        }
+    }
+
+    private static Object readPayload(Input in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readString();
+            case TAG_STRING_ARRAY: {
+                String[] values = new String[in.readCount()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = in.readString();
+                }
+                return values;
+            }
+            case TAG_PLAYER:
+                return readPlayer(in, false);
+            case TAG_PLAYER_QUANTIZED:
+                return readPlayer(in, true);
+            case TAG_BULLET:
+                return readBullet(in);
+            case TAG_CHICKEN:
+                return readChicken(in, false);
+            case TAG_CHICKEN_QUANTIZED:
+                return readChicken(in, true);
+            case TAG_CHICKEN_ARRAY:
+            case TAG_CHICKEN_ARRAY_QUANTIZED: {
+                ChickenData[] chickens = new ChickenData[in.readCount()];
+                for (int i = 0; i < chickens.length; i++) {
+                    chickens[i] = readChicken(in, tag == TAG_CHICKEN_ARRAY_QUANTIZED);
+                }
+                return chickens;
+            }
+            case TAG_INPUTS:
+                return readInputs(in);
+            case TAG_TIME_SYNC: {
+                TimeSync sync = new TimeSync();
+                sync.clientSendTime = in.readVarLong();
+                sync.serverReceiveTime = in.readVarLong();
+                sync.serverTick = in.readVarInt();
+                return sync;
+            }
+            case TAG_HIT_REPORT: {
+                HitReport hit = new HitReport();
+                hit.playerId = in.readString();
+                hit.damage = in.readVarInt();
+                hit.viewTime = in.readVarLong();
+                hit.x = in.readFloat();
+                hit.y = in.readFloat();
+                return hit;
+            }
+            case TAG_BULLET_HIT: {
+                BulletHit hit = new BulletHit();
+                hit.bulletId = in.readVarInt();
+                hit.kind = in.readUnsignedByte();
+                hit.target = in.readVarInt();
+                hit.x = in.readZigZag();
+                hit.y = in.readZigZag();
+                return hit;
+            }
+            case TAG_BOT:
+                return readBot(in);
+            case TAG_SNAPSHOT:
+                return readSnapshot(in, false);
+            case TAG_SNAPSHOT_QUANTIZED:
+                return readSnapshot(in, true);
+            case TAG_SNAPSHOT_DELTA:
+                return readSnapshotDelta(in, false);
+            case TAG_SNAPSHOT_DELTA_QUANTIZED:
+                return readSnapshotDelta(in, true);
+            case TAG_GAME_STATE:
+                return readGameState(in, false);
+            case TAG_GAME_STATE_QUANTIZED:
+                return readGameState(in, true);
+            default:
+                throw new StreamCorruptedException("Unknown payload tag: " + tag);
+        }
+    }
+
+    // The quantized form packs the 10-bit angle and the five flags into a single short.
+    // The handle's low bit says whether id, name and character follow. A player without a handle always sends them.
+    private static void writePlayer(PlayerData p, Output out, boolean quantized, boolean identity) {
+        boolean withIdentity = identity || p.handle == 0;
+        out.writeVarInt(p.handle << 1 | (withIdentity ? 1 : 0));
+        if (withIdentity) {
+            out.writeString(p.id);
+            out.writeString(p.name);
+            out.writeString(p.characterType);
+        }
+        if (quantized) {
+            out.writeShort(quantizePosition(p.x));
+            out.writeShort(quantizePosition(p.y));
+            out.writeShort(quantizeAngle(p.angle, PLAYER_ANGLE_BITS) << 5 | playerFlags(p));
+        } else {
+            out.writeDouble(p.x);
+            out.writeDouble(p.y);
+            out.writeDouble(p.angle);
+        }
+        out.writeZigZag(p.hp);
+        out.writeZigZag(p.ammo);
+        out.writeZigZag(p.kills);
+        if (!quantized) {
+            out.writeByte(playerFlags(p));
+        }
+        out.writeVarLong(p.lastUpdate);
+        out.writeVarLong(p.deathTime);
+        out.writeVarInt(p.lastInput);
+    }
+
+    private static PlayerData readPlayer(Input in, boolean quantized) throws IOException {
+        PlayerData p = new PlayerData();
+        int key = in.readVarInt();
+        p.handle = key >>> 1;
+        if ((key & 1) != 0) {
+            p.id = in.readString();
+            p.name = in.readString();
+            p.characterType = in.readString();
+        }
+        int flags = 0;
+        if (quantized) {
+            p.x = dequantizePosition(in.readUnsignedShort());
+            p.y = dequantizePosition(in.readUnsignedShort());
+            int packed = in.readUnsignedShort();
+            p.angle = dequantizeAngle(packed >>> 5, PLAYER_ANGLE_BITS);
+            flags = packed & 0x1F;
+        } else {
+            p.x = in.readDouble();
+            p.y = in.readDouble();
+            p.angle = in.readDouble();
+        }
+        p.hp = in.readZigZag();
+        p.ammo = in.readZigZag();
+        p.kills = in.readZigZag();
+        if (!quantized) {
+            flags = in.readUnsignedByte();
+        }
+        applyPlayerFlags(p, flags);
+        p.lastUpdate = in.readVarLong();
+        p.deathTime = in.readVarLong();
+        p.lastInput = in.readVarInt();
+        return p;
+    }
+
+    private static int playerFlags(PlayerData p) {
+        int flags = 0;
+        if (p.shooting) flags |= FLAG_SHOOTING;
+        if (p.reloading) flags |= FLAG_RELOADING;
+        if (p.hasWeapon) flags |= FLAG_HAS_WEAPON;
+        if (p.isGodMode) flags |= FLAG_GOD_MODE;
+        if (p.isDead) flags |= FLAG_DEAD;
+        return flags;
+    }
+
+    private static void applyPlayerFlags(PlayerData p, int flags) {
+        p.shooting = (flags & FLAG_SHOOTING) != 0;
+        p.reloading = (flags & FLAG_RELOADING) != 0;
+        p.hasWeapon = (flags & FLAG_HAS_WEAPON) != 0;
+        p.isGodMode = (flags & FLAG_GOD_MODE) != 0;
+        p.isDead = (flags & FLAG_DEAD) != 0;
+    }
+
+    private static void writeBullet(BulletData b, Output out) {
+        out.writeVarInt(b.id);
+        out.writeDouble(b.x);
+        out.writeDouble(b.y);
+        out.writeDouble(b.angle);
+        out.writeVarLong(b.timestamp);
+    }
+
+    private static BulletData readBullet(Input in) throws IOException {
+        BulletData b = new BulletData();
+        b.id = in.readVarInt();
+        b.x = in.readDouble();
+        b.y = in.readDouble();
+        b.angle = in.readDouble();
+        b.timestamp = in.readVarLong();
+        return b;
+    }
+
+    // Chicken positions are already whole pixels, so only the angle shrinks when quantized.
+    private static void writeChicken(ChickenData c, Output out, boolean quantized) {
+        out.writeVarInt(c.id);
+        out.writeZigZag(c.x);
+        out.writeZigZag(c.y);
+        out.writeZigZag(c.hp);
+        writeChickenAngle(c.angle, out, quantized);
+        out.writeByte(chickenFlags(c));
+        out.writeVarInt(c.currentFrame);
+        out.writeZigZag(c.respawnTimer);
+    }
+
+    private static ChickenData readChicken(Input in, boolean quantized) throws IOException {
+        ChickenData c = new ChickenData();
+        c.id = in.readVarInt();
+        c.x = in.readZigZag();
+        c.y = in.readZigZag();
+        c.hp = in.readZigZag();
+        c.angle = readChickenAngle(in, quantized);
+        applyChickenFlags(c, in.readUnsignedByte());
+        c.currentFrame = in.readVarInt();
+        c.respawnTimer = in.readZigZag();
+        return c;
+    }
+
+    private static void writeChickenAngle(double angle, Output out, boolean quantized) {
+        if (quantized) {
+            out.writeByte(quantizeAngle(angle, CHICKEN_ANGLE_BITS));
+        } else {
+            out.writeDouble(angle);
+        }
+    }
+
+    private static double readChickenAngle(Input in, boolean quantized) throws IOException {
+        return quantized ? dequantizeAngle(in.readUnsignedByte(), CHICKEN_ANGLE_BITS) : in.readDouble();
+    }
+
+    private static int chickenFlags(ChickenData c) {
+        int flags = 0;
+        if (c.isMoving) flags |= FLAG_CHICKEN_MOVING;
+        if (c.isHit) flags |= FLAG_CHICKEN_HIT;
+        if (c.isIdle) flags |= FLAG_CHICKEN_IDLE;
+        return flags;
+    }
+
+    private static void applyChickenFlags(ChickenData c, int flags) {
+        c.isMoving = (flags & FLAG_CHICKEN_MOVING) != 0;
+        c.isHit = (flags & FLAG_CHICKEN_HIT) != 0;
+        c.isIdle = (flags & FLAG_CHICKEN_IDLE) != 0;
+    }
+
+    public static int quantizePosition(double value) {
+        long q = Math.round(value * POSITION_SCALE);
+        return (int) Math.max(0, Math.min(0xFFFF, q));
+    }
+
+    public static double dequantizePosition(int value) {
+        return value / POSITION_SCALE;
+    }
+
+    // Angles are stored as a fraction of a full turn and come back in the same -PI..PI range as atan2.
+    public static int quantizeAngle(double angle, int bits) {
+        double turn = angle / (2 * Math.PI);
+        turn -= Math.floor(turn);
+        return (int) Math.round(turn * (1 << bits)) & ((1 << bits) - 1);
+    }
+
+    public static double dequantizeAngle(int value, int bits) {
+        double angle = value * (2 * Math.PI) / (1 << bits);
+        return angle >= Math.PI ? angle - 2 * Math.PI : angle;
+    }
+
+    // Inputs in one message are usually consecutive, so each sequence is sent as the gap from the previous one.
+    private static void writeInputs(InputCommand[] inputs, Output out) {
+        out.writeVarInt(inputs.length);
+        int previous = 0;
+        for (InputCommand input : inputs) {
+            out.writeVarInt(input.sequence - previous);
+            previous = input.sequence;
+            out.writeByte(input.buttons);
+            out.writeShort(quantizeAngle(input.angle, InputCommand.ANGLE_BITS));
+        }
+    }
+
+    private static InputCommand[] readInputs(Input in) throws IOException {
+        InputCommand[] inputs = new InputCommand[in.readCount()];
+        int previous = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            InputCommand input = new InputCommand();
+            input.sequence = previous + in.readVarInt();
+            previous = input.sequence;
+            input.buttons = in.readUnsignedByte();
+            input.angle = dequantizeAngle(in.readUnsignedShort(), InputCommand.ANGLE_BITS);
+            inputs[i] = input;
+        }
+        return inputs;
+    }
+
+    private static void writeBot(BotData b, Output out) {
+        out.writeString(b.id);
+        out.writeDouble(b.x);
+        out.writeDouble(b.y);
+        out.writeDouble(b.angle);
+        out.writeZigZag(b.hp);
+        out.writeVarLong(b.lastUpdate);
+    }
+
+    private static BotData readBot(Input in) throws IOException {
+        BotData b = new BotData();
+        b.id = in.readString();
+        b.x = in.readDouble();
+        b.y = in.readDouble();
+        b.angle = in.readDouble();
+        b.hp = in.readZigZag();
+        b.lastUpdate = in.readVarLong();
+        return b;
+    }
+
+    private static void writeSnapshot(WorldSnapshot snapshot, Output out, boolean quantized, boolean identities) {
+        out.writeVarInt(snapshot.tick);
+        out.writeVarLong(snapshot.serverTime);
+        out.writeVarInt(snapshot.players.length);
+        for (PlayerData player : snapshot.players) {
+            writePlayer(player, out, quantized, identities);
+        }
+        out.writeVarInt(snapshot.chickens.length);
+        for (ChickenData chicken : snapshot.chickens) {
+            writeChicken(chicken, out, quantized);
+        }
+    }
+
+    private static WorldSnapshot readSnapshot(Input in, boolean quantized) throws IOException {
+        WorldSnapshot snapshot = new WorldSnapshot();
+        snapshot.tick = in.readVarInt();
+        snapshot.serverTime = in.readVarLong();
+        snapshot.players = new PlayerData[in.readCount()];
+        for (int i = 0; i < snapshot.players.length; i++) {
+            snapshot.players[i] = readPlayer(in, quantized);
+        }
+        snapshot.chickens = new ChickenData[in.readCount()];
+        for (int i = 0; i < snapshot.chickens.length; i++) {
+            snapshot.chickens[i] = readChicken(in, quantized);
+        }
+        return snapshot;
+    }
+
+    private static void writeGameState(GameStateData state, Output out, boolean quantized) {
+        writeSnapshot(state.snapshot, out, quantized, true);
+        out.writeVarInt(state.weapons.length);
+        for (WeaponData weapon : state.weapons) {
+            out.writeVarInt(weapon.id);
+            out.writeZigZag(weapon.x);
+            out.writeZigZag(weapon.y);
+        }
+    }
+
+    private static GameStateData readGameState(Input in, boolean quantized) throws IOException {
+        GameStateData state = new GameStateData();
+        state.snapshot = readSnapshot(in, quantized);
+        state.weapons = new WeaponData[in.readCount()];
+        for (int i = 0; i < state.weapons.length; i++) {
+            state.weapons[i] = new WeaponData(in.readVarInt(), in.readZigZag(), in.readZigZag());
+        }
+        return state;
+    }
+
+    // Entities carry their key and field mask followed by only the masked fields.
+    private static void writeSnapshotDelta(SnapshotDelta delta, Output out, boolean quantized) {
+        out.writeVarInt(delta.tick);
+        out.writeVarLong(delta.serverTime);
+        out.writeVarInt(delta.baselineTick);
+        out.writeVarInt(delta.players.length);
+        for (int i = 0; i < delta.players.length; i++) {
+            writePlayerFields(delta.players[i], delta.playerMasks[i], out, quantized);
+        }
+        out.writeVarInt(delta.removedPlayers.length);
+        for (int handle : delta.removedPlayers) {
+            out.writeVarInt(handle);
+        }
+        out.writeVarInt(delta.chickens.length);
+        for (int i = 0; i < delta.chickens.length; i++) {
+            writeChickenFields(delta.chickens[i], delta.chickenMasks[i], out, quantized);
+        }
+        out.writeVarInt(delta.removedChickens.length);
+        for (int id : delta.removedChickens) {
+            out.writeVarInt(id);
+        }
+    }
+
+    private static SnapshotDelta readSnapshotDelta(Input in, boolean quantized) throws IOException {
+        SnapshotDelta delta = new SnapshotDelta();
+        delta.tick = in.readVarInt();
+        delta.serverTime = in.readVarLong();
+        delta.baselineTick = in.readVarInt();
+        int playerCount = in.readCount();
+        delta.players = new PlayerData[playerCount];
+        delta.playerMasks = new int[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            delta.playerMasks[i] = in.readVarInt();
+            delta.players[i] = readPlayerFields(delta.playerMasks[i], in, quantized);
+        }
+        delta.removedPlayers = new int[in.readCount()];
+        for (int i = 0; i < delta.removedPlayers.length; i++) {
+            delta.removedPlayers[i] = in.readVarInt();
+        }
+        int chickenCount = in.readCount();
+        delta.chickens = new ChickenData[chickenCount];
+        delta.chickenMasks = new int[chickenCount];
+        for (int i = 0; i < chickenCount; i++) {
+            delta.chickenMasks[i] = in.readVarInt();
+            delta.chickens[i] = readChickenFields(delta.chickenMasks[i], in, quantized);
+        }
+        delta.removedChickens = new int[in.readCount()];
+        for (int i = 0; i < delta.removedChickens.length; i++) {
+            delta.removedChickens[i] = in.readVarInt();
+        }
+        return delta;
+    }
+
+    private static void writePlayerFields(PlayerData p, int mask, Output out, boolean quantized) {
+        out.writeVarInt(mask);
+        out.writeVarInt(p.handle);
+        if (quantized) {
+            if ((mask & SnapshotDelta.PLAYER_X) != 0) out.writeShort(quantizePosition(p.x));
+            if ((mask & SnapshotDelta.PLAYER_Y) != 0) out.writeShort(quantizePosition(p.y));
+            if ((mask & SnapshotDelta.PLAYER_ANGLE) != 0) out.writeShort(quantizeAngle(p.angle, PLAYER_ANGLE_BITS));
+        } else {
+            if ((mask & SnapshotDelta.PLAYER_X) != 0) out.writeDouble(p.x);
+            if ((mask & SnapshotDelta.PLAYER_Y) != 0) out.writeDouble(p.y);
+            if ((mask & SnapshotDelta.PLAYER_ANGLE) != 0) out.writeDouble(p.angle);
+        }
+        if ((mask & SnapshotDelta.PLAYER_HP) != 0) out.writeZigZag(p.hp);
+        if ((mask & SnapshotDelta.PLAYER_AMMO) != 0) out.writeZigZag(p.ammo);
+        if ((mask & SnapshotDelta.PLAYER_KILLS) != 0) out.writeZigZag(p.kills);
+        if ((mask & SnapshotDelta.PLAYER_FLAGS) != 0) out.writeByte(playerFlags(p));
+        if ((mask & SnapshotDelta.PLAYER_NAME) != 0) {
+            out.writeString(p.id);
+            out.writeString(p.name);
+        }
+        if ((mask & SnapshotDelta.PLAYER_CHARACTER) != 0) out.writeString(p.characterType);
+        if ((mask & SnapshotDelta.PLAYER_DEATH_TIME) != 0) out.writeVarLong(p.deathTime);
+        if ((mask & SnapshotDelta.PLAYER_LAST_INPUT) != 0) out.writeVarInt(p.lastInput);
+    }
+
+    private static PlayerData readPlayerFields(int mask, Input in, boolean quantized) throws IOException {
+        PlayerData p = new PlayerData();
+        p.handle = in.readVarInt();
+        if (quantized) {
+            if ((mask & SnapshotDelta.PLAYER_X) != 0) p.x = dequantizePosition(in.readUnsignedShort());
+            if ((mask & SnapshotDelta.PLAYER_Y) != 0) p.y = dequantizePosition(in.readUnsignedShort());
+            if ((mask & SnapshotDelta.PLAYER_ANGLE) != 0) p.angle = dequantizeAngle(in.readUnsignedShort(), PLAYER_ANGLE_BITS);
+        } else {
+            if ((mask & SnapshotDelta.PLAYER_X) != 0) p.x = in.readDouble();
+            if ((mask & SnapshotDelta.PLAYER_Y) != 0) p.y = in.readDouble();
+            if ((mask & SnapshotDelta.PLAYER_ANGLE) != 0) p.angle = in.readDouble();
+        }
+        if ((mask & SnapshotDelta.PLAYER_HP) != 0) p.hp = in.readZigZag();
+        if ((mask & SnapshotDelta.PLAYER_AMMO) != 0) p.ammo = in.readZigZag();
+        if ((mask & SnapshotDelta.PLAYER_KILLS) != 0) p.kills = in.readZigZag();
+        if ((mask & SnapshotDelta.PLAYER_FLAGS) != 0) applyPlayerFlags(p, in.readUnsignedByte());
+        if ((mask & SnapshotDelta.PLAYER_NAME) != 0) {
+            p.id = in.readString();
+            p.name = in.readString();
+        }
+        if ((mask & SnapshotDelta.PLAYER_CHARACTER) != 0) p.characterType = in.readString();
+        if ((mask & SnapshotDelta.PLAYER_DEATH_TIME) != 0) p.deathTime = in.readVarLong();
+        if ((mask & SnapshotDelta.PLAYER_LAST_INPUT) != 0) p.lastInput = in.readVarInt();
+        return p;
+    }
+
+    private static void writeChickenFields(ChickenData c, int mask, Output out, boolean quantized) {
+        out.writeVarInt(mask);
+        out.writeVarInt(c.id);
+        if ((mask & SnapshotDelta.CHICKEN_X) != 0) out.writeZigZag(c.x);
+        if ((mask & SnapshotDelta.CHICKEN_Y) != 0) out.writeZigZag(c.y);
+        if ((mask & SnapshotDelta.CHICKEN_HP) != 0) out.writeZigZag(c.hp);
+        if ((mask & SnapshotDelta.CHICKEN_ANGLE) != 0) writeChickenAngle(c.angle, out, quantized);
+        if ((mask & SnapshotDelta.CHICKEN_FLAGS) != 0) out.writeByte(chickenFlags(c));
+        if ((mask & SnapshotDelta.CHICKEN_FRAME) != 0) out.writeVarInt(c.currentFrame);
+    }
+
+    private static ChickenData readChickenFields(int mask, Input in, boolean quantized) throws IOException {
+        ChickenData c = new ChickenData();
+        c.id = in.readVarInt();
+        if ((mask & SnapshotDelta.CHICKEN_X) != 0) c.x = in.readZigZag();
+        if ((mask & SnapshotDelta.CHICKEN_Y) != 0) c.y = in.readZigZag();
+        if ((mask & SnapshotDelta.CHICKEN_HP) != 0) c.hp = in.readZigZag();
+        if ((mask & SnapshotDelta.CHICKEN_ANGLE) != 0) c.angle = readChickenAngle(in, quantized);
+        if ((mask & SnapshotDelta.CHICKEN_FLAGS) != 0) applyChickenFlags(c, in.readUnsignedByte());
+        if ((mask & SnapshotDelta.CHICKEN_FRAME) != 0) c.currentFrame = in.readVarInt();
+        return c;
+    }
+
+    public static class Output {
+        private byte[] buf;
+        private int pos;
+
+        public Output(int capacity) {
+            buf = new byte[Math.max(16, capacity)];
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        public void writeByte(int value) {
+            ensure(1);
+            buf[pos++] = (byte) value;
+        }
+
+        public void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, pos, length);
+            pos += length;
+        }
+
+        public void writeShort(int value) {
+            ensure(2);
+            buf[pos++] = (byte) (value >>> 8);
+            buf[pos++] = (byte) value;
+        }
+
+        public void writeInt(int value) {
+            ensure(4);
+            buf[pos++] = (byte) (value >>> 24);
+            buf[pos++] = (byte) (value >>> 16);
+            buf[pos++] = (byte) (value >>> 8);
+            buf[pos++] = (byte) value;
+        }
+
+        public void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        public void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        public void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        public void writeZigZag(int value) {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        public void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        public void writeDouble(double value) {
+            writeLong(Double.doubleToLongBits(value));
+        }
+
+        public void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        public int size() {
+            return pos;
+        }
+
+        public void reset() {
+            pos = 0;
+        }
+
+        public void truncate(int size) {
+            pos = Math.min(pos, size);
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    public static class Input {
+        private final byte[] buf;
+        private int pos;
+        private final int limit;
+
+        public Input(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        private void require(int count) throws IOException {
+            if (count < 0 || pos + count > limit) {
+                throw new StreamCorruptedException("Truncated message");
+            }
+        }
+
+        public int readUnsignedByte() throws IOException {
+            require(1);
+            return buf[pos++] & 0xFF;
+        }
+
+        public int readUnsignedShort() throws IOException {
+            require(2);
+            int value = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+            pos += 2;
+            return value;
+        }
+
+        public int readInt() throws IOException {
+            require(4);
+            int value = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16)
+                    | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return value;
+        }
+
+        public long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        public int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        public long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varlong");
+        }
+
+        public int readZigZag() throws IOException {
+            int raw = readVarInt();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        public float readFloat() throws IOException {
+            return Float.intBitsToFloat(readInt());
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        public String readString() throws IOException {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            require(length);
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        // Every element takes at least a byte, so a count beyond what is left cannot be real. Checking before
+        // allocating stops a few bytes from asking for a multi-gigabyte array.
+        public int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > remaining()) {
+                throw new StreamCorruptedException("Bad element count: " + count);
+            }
+            return count;
+        }
+
+        public int remaining() {
+            return limit - pos;
+        }
+
+        public int position() {
+            return pos;
+        }
+
+        public void skip(int count) throws IOException {
+            require(count);
+            pos += count;
+        }
+    }
+}
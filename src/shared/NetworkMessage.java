@@ -17,6 +17,14 @@ public class NetworkMessage implements Serializable {
     public static final int PING = 10;
     public static final int PONG = 11;
     public static final int CHICKEN_UPDATE = 12;
+    public static final int SNAPSHOT = 13;
+    public static final int SNAPSHOT_DELTA = 14;
+    public static final int SNAPSHOT_ACK = 15;
+    public static final int UDP_TOKEN = 16;
+    public static final int UDP_READY = 17;
+    public static final int CHICKEN_STATE = 18;
+    public static final int INPUT = 19;
+    public static final int BULLET_HIT = 20;
 
     public int type;
     public String playerId;
@@ -47,4 +55,16 @@ public class NetworkMessage implements Serializable {
         this.timestamp = System.currentTimeMillis();
         this.sequence = sequence;
     }
+
+    // State that is superseded by the next message of the same type, so losing one is harmless.
+    public static boolean isDroppable(int type) {
+        return type == PLAYER_UPDATE
+                || type == CHICKEN_UPDATE
+                || type == SNAPSHOT
+                || type == SNAPSHOT_DELTA
+                || type == SNAPSHOT_ACK
+                || type == INPUT
+                || type == PING
+                || type == PONG;
+    }
 }
@@ -6,6 +6,8 @@ public class PlayerData implements Serializable {
     private static final long serialVersionUID = 1L;
     
     public String id;
+    // 16-bit handle assigned by the server at join; 0 until then.
+    public int handle;
     public String name;
     public double x, y;
     public double angle;
@@ -20,6 +22,8 @@ public class PlayerData implements Serializable {
     public long lastUpdate;
     public long deathTime = 0;
     public boolean isDead = false;
+    // Sequence of the newest input command the server has applied for this player.
+    public int lastInput;
 
     public PlayerData() {
         this.id = "";
@@ -70,4 +74,30 @@ public class PlayerData implements Serializable {
             deathTime = 0;
         }
     }
+
+    // Id, name and character only travel in join messages; everything else names the player by handle.
+    public void copyIdentity(PlayerData from) {
+        this.id = from.id;
+        this.handle = from.handle;
+        this.name = from.name;
+        this.characterType = from.characterType;
+    }
+
+    public PlayerData copy() {
+        PlayerData c = new PlayerData(id, name, x, y, characterType);
+        c.handle = handle;
+        c.angle = angle;
+        c.hp = hp;
+        c.ammo = ammo;
+        c.kills = kills;
+        c.shooting = shooting;
+        c.reloading = reloading;
+        c.hasWeapon = hasWeapon;
+        c.isGodMode = isGodMode;
+        c.lastUpdate = lastUpdate;
+        c.deathTime = deathTime;
+        c.isDead = isDead;
+        c.lastInput = lastInput;
+        return c;
+    }
 }
@@ -0,0 +1,84 @@
+package shared;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+// The movement step shared by client prediction and the server, so both land on the same position for the same inputs.
+public class PlayerMovement {
+    public int x, y;
+    public boolean dashing;
+    public int dashDistance;
+    public double dashAngle;
+    public int dashCooldown;
+    public boolean moving;
+
+    public PlayerMovement() {
+    }
+
+    public PlayerMovement(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public void apply(InputCommand input, List<Rectangle2D.Double> collisions, List<Rectangle2D.Double> blockers) {
+        if (input.has(InputCommand.DASH) && dashCooldown == 0 && !dashing) {
+            dashing = true;
+            dashAngle = input.angle;
+            dashDistance = 0;
+            dashCooldown = Config.DASH_COOLDOWN;
+        }
+
+        int dx = 0, dy = 0;
+        moving = false;
+        if (dashing) {
+            dx = (int) (Math.cos(dashAngle) * Config.DASH_SPEED);
+            dy = (int) (Math.sin(dashAngle) * Config.DASH_SPEED);
+            dashDistance += Config.DASH_SPEED;
+            if (dashDistance >= Config.DASH_DISTANCE) {
+                dashing = false;
+                dashDistance = 0;
+            }
+        } else {
+            if (input.has(InputCommand.UP)) {
+                dy -= Config.PLAYER_SPEED;
+                moving = true;
+            }
+            if (input.has(InputCommand.DOWN)) {
+                dy += Config.PLAYER_SPEED;
+                moving = true;
+            }
+            if (input.has(InputCommand.LEFT)) {
+                dx -= Config.PLAYER_SPEED;
+                moving = true;
+            }
+            if (input.has(InputCommand.RIGHT)) {
+                dx += Config.PLAYER_SPEED;
+                moving = true;
+            }
+        }
+
+        if (dx != 0) {
+            Rectangle2D.Double nextX = new Rectangle2D.Double(x + dx, y, Config.PLAYER_WIDTH, Config.PLAYER_HEIGHT);
+            if (!Utils.rectHitsCollision(nextX, collisions) && !Utils.rectHitsCollision(nextX, blockers))
+                x += dx;
+        }
+        if (dy != 0) {
+            Rectangle2D.Double nextY = new Rectangle2D.Double(x, y + dy, Config.PLAYER_WIDTH, Config.PLAYER_HEIGHT);
+            if (!Utils.rectHitsCollision(nextY, collisions) && !Utils.rectHitsCollision(nextY, blockers))
+                y += dy;
+        }
+
+        if (dashCooldown > 0)
+            dashCooldown--;
+    }
+
+    public PlayerMovement copy() {
+        PlayerMovement c = new PlayerMovement(x, y);
+        c.dashing = dashing;
+        c.dashDistance = dashDistance;
+        c.dashAngle = dashAngle;
+        c.dashCooldown = dashCooldown;
+        c.moving = moving;
+        return c;
+    }
+}
@@ -0,0 +1,297 @@
+package shared;
+
+import java.io.IOException;
+import java.util.*;
+
+// One side of a UDP-only link. Every packet acks the last 33 packets it has seen from the peer;
+// reliable messages ride along until a packet carrying them is acked, and are delivered in order.
+public class ReliableEndpoint {
+    private static final int ACK_BITS = 32;
+    private static final int SENT_HISTORY = 128;
+    // Reliable ids more than this far past the oldest one not yet delivered are neither sent nor buffered,
+    // so a peer cannot make the receiver hold an unbounded number of out-of-order messages.
+    private static final int RELIABLE_WINDOW = 256;
+
+    private int nextPacketSequence = 0;
+    private int remoteSequence = -1;
+    private int remoteAckBits = 0;
+    private boolean ackOwed = false;
+    private final SentPacket[] sentPackets = new SentPacket[SENT_HISTORY];
+    private int lossCheckedUpTo = -1;
+
+    private int nextReliableId = 0;
+    private final Map<Integer, PendingMessage> unacked = new LinkedHashMap<>();
+    private int nextExpectedReliable = 0;
+    private final Map<Integer, NetworkMessage> outOfOrder = new HashMap<>();
+
+    private double rtt = -1;
+    private long packetsSent = 0;
+    // Only packets that expect an ack can be counted lost, so only they go into the loss rate.
+    private long payloadPacketsSent = 0;
+    private long packetsReceived = 0;
+    private long packetsLost = 0;
+    private long resends = 0;
+    private long lastReceiveTime = System.currentTimeMillis();
+
+    private static class SentPacket {
+        final int sequence;
+        final long sendTime;
+        final int[] reliableIds;
+        final boolean needsAck;
+        boolean acked;
+
+        SentPacket(int sequence, long sendTime, int[] reliableIds, boolean needsAck) {
+            this.sequence = sequence;
+            this.sendTime = sendTime;
+            this.reliableIds = reliableIds;
+            this.needsAck = needsAck;
+        }
+    }
+
+    private static class PendingMessage {
+        final byte[] frame;
+        long lastSent = -1;
+
+        PendingMessage(byte[] frame) {
+            this.frame = frame;
+        }
+    }
+
+    public synchronized void queueReliable(byte[] frame) {
+        unacked.put(nextReliableId++, new PendingMessage(frame));
+    }
+
+    // True when a packet should go out even with no new unreliable data: acks owed or resends due.
+    public synchronized boolean hasWork(long now) {
+        if (ackOwed) {
+            return true;
+        }
+        long timeout = resendTimeout();
+        int windowEnd = -1;
+        for (Map.Entry<Integer, PendingMessage> entry : unacked.entrySet()) {
+            if (windowEnd < 0) {
+                windowEnd = entry.getKey() + RELIABLE_WINDOW;
+            }
+            if (entry.getKey() >= windowEnd) {
+                break;
+            }
+            PendingMessage pending = entry.getValue();
+            if (pending.lastSent < 0 || now - pending.lastSent >= timeout) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Packet: seq, ack, ack bits, reliable (id + frame)*, unreliable frame*. Sent unreliable frames are
+    // removed from the list; callers keep building packets until it is empty.
+    public synchronized byte[] buildPacket(List<byte[]> unreliableFrames, int maxSize, long now) {
+        NetworkCodec.Output out = new NetworkCodec.Output(256);
+        int sequence = nextPacketSequence++;
+        out.writeVarInt(sequence);
+        out.writeZigZag(remoteSequence);
+        out.writeInt(remoteAckBits);
+        ackOwed = false;
+
+        // Unreliable frames that do not fit stay in the list for the next packet; one that is too big on its
+        // own still goes out alone. Two bytes are kept for the counts.
+        int budget = maxSize - out.size() - 2;
+        List<byte[]> unreliable = new ArrayList<>();
+        for (Iterator<byte[]> it = unreliableFrames.iterator(); it.hasNext(); ) {
+            byte[] frame = it.next();
+            if (frame.length > budget && !unreliable.isEmpty()) {
+                break;
+            }
+            unreliable.add(frame);
+            budget -= frame.length;
+            it.remove();
+        }
+        List<Integer> ids = new ArrayList<>();
+        List<byte[]> frames = new ArrayList<>();
+        long timeout = resendTimeout();
+        int windowEnd = -1;
+        for (Map.Entry<Integer, PendingMessage> entry : unacked.entrySet()) {
+            // Entries are in id order, so the first one is the oldest unacked.
+            if (windowEnd < 0) {
+                windowEnd = entry.getKey() + RELIABLE_WINDOW;
+            }
+            if (entry.getKey() >= windowEnd) {
+                break;
+            }
+            PendingMessage pending = entry.getValue();
+            if (pending.lastSent >= 0 && now - pending.lastSent < timeout) {
+                continue;
+            }
+            // An oversized message still goes out alone rather than stalling the channel.
+            if (pending.frame.length + 5 > budget && (!frames.isEmpty() || !unreliable.isEmpty())) {
+                break;
+            }
+            if (pending.lastSent >= 0) {
+                resends++;
+            }
+            pending.lastSent = now;
+            ids.add(entry.getKey());
+            frames.add(pending.frame);
+            budget -= pending.frame.length + 5;
+        }
+
+        out.writeVarInt(frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            out.writeVarInt(ids.get(i));
+            out.writeBytes(frames.get(i), 0, frames.get(i).length);
+        }
+        out.writeVarInt(unreliable.size());
+        for (byte[] frame : unreliable) {
+            out.writeBytes(frame, 0, frame.length);
+        }
+
+        int[] reliableIds = new int[ids.size()];
+        for (int i = 0; i < reliableIds.length; i++) {
+            reliableIds[i] = ids.get(i);
+        }
+        int slot = sequence % SENT_HISTORY;
+        // Ack-only packets are never acked themselves, otherwise two idle peers would ping-pong forever.
+        boolean needsAck = reliableIds.length > 0 || !unreliable.isEmpty();
+        sentPackets[slot] = new SentPacket(sequence, now, reliableIds, needsAck);
+        packetsSent++;
+        if (needsAck) {
+            payloadPacketsSent++;
+        }
+        return out.toByteArray();
+    }
+
+    // Returns the messages ready for the application: unreliable ones immediately, reliable ones in send order.
+    public synchronized List<NetworkMessage> receivePacket(byte[] bytes, int offset, int length, long now) throws IOException {
+        NetworkCodec.Input in = new NetworkCodec.Input(bytes, offset, length);
+        int sequence = in.readVarInt();
+        int ack = in.readZigZag();
+        int ackBits = in.readInt();
+        packetsReceived++;
+        lastReceiveTime = now;
+
+        if (ack >= 0) {
+            markAcked(ack, now);
+            for (int i = 0; i < ACK_BITS; i++) {
+                if ((ackBits & (1 << i)) != 0) {
+                    markAcked(ack - 1 - i, now);
+                }
+            }
+            countLosses(ack - ACK_BITS - 1);
+        }
+
+        List<NetworkMessage> delivered = new ArrayList<>();
+        int reliableCount = in.readVarInt();
+        for (int i = 0; i < reliableCount; i++) {
+            int id = in.readVarInt();
+            NetworkMessage message = readFrame(bytes, in);
+            if (id >= nextExpectedReliable && id < nextExpectedReliable + RELIABLE_WINDOW && !outOfOrder.containsKey(id)) {
+                outOfOrder.put(id, message);
+            }
+        }
+        NetworkMessage next;
+        while ((next = outOfOrder.remove(nextExpectedReliable)) != null) {
+            delivered.add(next);
+            nextExpectedReliable++;
+        }
+
+        int unreliableCount = in.readVarInt();
+        for (int i = 0; i < unreliableCount; i++) {
+            delivered.add(readFrame(bytes, in));
+        }
+
+        recordRemoteSequence(sequence);
+        if (reliableCount > 0 || unreliableCount > 0) {
+            ackOwed = true;
+        }
+        return delivered;
+    }
+
+    private NetworkMessage readFrame(byte[] bytes, NetworkCodec.Input in) throws IOException {
+        int start = in.position();
+        int bodyLength = in.readVarInt();
+        int headerLength = in.position() - start;
+        in.skip(bodyLength);
+        return NetworkCodec.decodeFrame(bytes, start, headerLength + bodyLength);
+    }
+
+    private void recordRemoteSequence(int sequence) {
+        if (remoteSequence < 0) {
+            remoteSequence = sequence;
+        } else if (sequence > remoteSequence) {
+            int shift = sequence - remoteSequence;
+            if (shift < ACK_BITS) {
+                remoteAckBits = (remoteAckBits << shift) | (1 << (shift - 1));
+            } else if (shift == ACK_BITS) {
+                remoteAckBits = 1 << (ACK_BITS - 1);
+            } else {
+                remoteAckBits = 0;
+            }
+            remoteSequence = sequence;
+        } else if (sequence < remoteSequence && remoteSequence - sequence <= ACK_BITS) {
+            remoteAckBits |= 1 << (remoteSequence - sequence - 1);
+        }
+    }
+
+    private void markAcked(int sequence, long now) {
+        if (sequence < 0) {
+            return;
+        }
+        SentPacket packet = sentPackets[sequence % SENT_HISTORY];
+        if (packet == null || packet.sequence != sequence || packet.acked) {
+            return;
+        }
+        packet.acked = true;
+        double sample = now - packet.sendTime;
+        rtt = rtt < 0 ? sample : rtt * 0.9 + sample * 0.1;
+        for (int id : packet.reliableIds) {
+            unacked.remove(id);
+        }
+    }
+
+    // A packet that has slid out of the peer's ack window without being acked is never going to be.
+    private void countLosses(int upTo) {
+        for (int sequence = Math.max(lossCheckedUpTo + 1, upTo - SENT_HISTORY + 1); sequence <= upTo; sequence++) {
+            SentPacket packet = sentPackets[sequence % SENT_HISTORY];
+            if (packet != null && packet.sequence == sequence && packet.needsAck && !packet.acked) {
+                packetsLost++;
+            }
+        }
+        lossCheckedUpTo = Math.max(lossCheckedUpTo, upTo);
+    }
+
+    private long resendTimeout() {
+        return rtt < 0 ? 200 : Math.max(30, (long) (rtt * 1.5) + 10);
+    }
+
+    public synchronized double getRtt() {
+        return rtt;
+    }
+
+    public synchronized double getLossPercent() {
+        return payloadPacketsSent == 0 ? 0 : packetsLost * 100.0 / payloadPacketsSent;
+    }
+
+    public synchronized long getResends() {
+        return resends;
+    }
+
+    public synchronized long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public synchronized long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public synchronized int getUnackedCount() {
+        return unacked.size();
+    }
+
+    public synchronized long getLastReceiveTime() {
+        return lastReceiveTime;
+    }
+
+    public synchronized String summary() {
+        return String.format("rtt %.0fms | loss %.1f%% | resends %d", Math.max(0, rtt), getLossPercent(), resends);
+    }
+}
@@ -0,0 +1,212 @@
+package shared;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SnapshotDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int PLAYER_X = 1;
+    public static final int PLAYER_Y = 1 << 1;
+    public static final int PLAYER_ANGLE = 1 << 2;
+    public static final int PLAYER_HP = 1 << 3;
+    public static final int PLAYER_AMMO = 1 << 4;
+    public static final int PLAYER_KILLS = 1 << 5;
+    public static final int PLAYER_FLAGS = 1 << 6;
+    public static final int PLAYER_NAME = 1 << 7;
+    public static final int PLAYER_CHARACTER = 1 << 8;
+    public static final int PLAYER_DEATH_TIME = 1 << 9;
+    public static final int PLAYER_LAST_INPUT = 1 << 10;
+    public static final int PLAYER_ALL = (1 << 11) - 1;
+
+    public static final int CHICKEN_X = 1;
+    public static final int CHICKEN_Y = 1 << 1;
+    public static final int CHICKEN_HP = 1 << 2;
+    public static final int CHICKEN_ANGLE = 1 << 3;
+    public static final int CHICKEN_FLAGS = 1 << 4;
+    public static final int CHICKEN_FRAME = 1 << 5;
+    public static final int CHICKEN_ALL = (1 << 6) - 1;
+
+    public int tick;
+    public long serverTime;
+    public int baselineTick;
+    public PlayerData[] players;
+    public int[] playerMasks;
+    public ChickenData[] chickens;
+    public int[] chickenMasks;
+    public int[] removedPlayers;
+    public int[] removedChickens;
+
+    public SnapshotDelta() {
+        this.players = new PlayerData[0];
+        this.playerMasks = new int[0];
+        this.chickens = new ChickenData[0];
+        this.chickenMasks = new int[0];
+        this.removedPlayers = new int[0];
+        this.removedChickens = new int[0];
+    }
+
+    // Only entities that differ from the baseline are included, each with a mask of the fields that changed.
+    public static SnapshotDelta diff(WorldSnapshot baseline, WorldSnapshot current) {
+        SnapshotDelta delta = new SnapshotDelta();
+        delta.tick = current.tick;
+        delta.serverTime = current.serverTime;
+        delta.baselineTick = baseline.tick;
+
+        Map<Integer, PlayerData> oldPlayers = new LinkedHashMap<>();
+        for (PlayerData p : baseline.players) {
+            oldPlayers.put(p.handle, p);
+        }
+        List<PlayerData> changedPlayers = new ArrayList<>();
+        List<Integer> playerMasks = new ArrayList<>();
+        for (PlayerData p : current.players) {
+            PlayerData old = oldPlayers.remove(p.handle);
+            int mask = old == null ? PLAYER_ALL : playerMask(old, p);
+            if (mask != 0) {
+                changedPlayers.add(p);
+                playerMasks.add(mask);
+            }
+        }
+        delta.players = changedPlayers.toArray(new PlayerData[0]);
+        delta.playerMasks = toIntArray(playerMasks);
+        delta.removedPlayers = toIntArray(new ArrayList<>(oldPlayers.keySet()));
+
+        Map<Integer, ChickenData> oldChickens = new LinkedHashMap<>();
+        for (ChickenData c : baseline.chickens) {
+            oldChickens.put(c.id, c);
+        }
+        List<ChickenData> changedChickens = new ArrayList<>();
+        List<Integer> chickenMasks = new ArrayList<>();
+        for (ChickenData c : current.chickens) {
+            ChickenData old = oldChickens.remove(c.id);
+            int mask = old == null ? CHICKEN_ALL : chickenMask(old, c);
+            if (mask != 0) {
+                changedChickens.add(c);
+                chickenMasks.add(mask);
+            }
+        }
+        delta.chickens = changedChickens.toArray(new ChickenData[0]);
+        delta.chickenMasks = toIntArray(chickenMasks);
+        delta.removedChickens = toIntArray(new ArrayList<>(oldChickens.keySet()));
+        return delta;
+    }
+
+    // Rebuilds the full snapshot the server diffed against; the baseline itself is left untouched.
+    public WorldSnapshot applyTo(WorldSnapshot baseline) {
+        Map<Integer, PlayerData> players = new LinkedHashMap<>();
+        for (PlayerData p : baseline.players) {
+            players.put(p.handle, p);
+        }
+        for (int handle : removedPlayers) {
+            players.remove(handle);
+        }
+        for (int i = 0; i < this.players.length; i++) {
+            PlayerData changed = this.players[i];
+            PlayerData old = players.get(changed.handle);
+            PlayerData merged = old == null ? new PlayerData() : old.copy();
+            merged.handle = changed.handle;
+            applyPlayer(merged, changed, old == null ? PLAYER_ALL : playerMasks[i]);
+            players.put(merged.handle, merged);
+        }
+
+        Map<Integer, ChickenData> chickens = new LinkedHashMap<>();
+        for (ChickenData c : baseline.chickens) {
+            chickens.put(c.id, c);
+        }
+        for (int id : removedChickens) {
+            chickens.remove(id);
+        }
+        for (int i = 0; i < this.chickens.length; i++) {
+            ChickenData changed = this.chickens[i];
+            ChickenData old = chickens.get(changed.id);
+            ChickenData merged = old == null ? new ChickenData() : old.copy();
+            merged.id = changed.id;
+            applyChicken(merged, changed, old == null ? CHICKEN_ALL : chickenMasks[i]);
+            chickens.put(merged.id, merged);
+        }
+
+        WorldSnapshot snapshot = new WorldSnapshot(tick,
+                players.values().toArray(new PlayerData[0]), chickens.values().toArray(new ChickenData[0]));
+        snapshot.serverTime = serverTime;
+        return snapshot;
+    }
+
+    public static int playerMask(PlayerData a, PlayerData b) {
+        int mask = 0;
+        if (a.x != b.x) mask |= PLAYER_X;
+        if (a.y != b.y) mask |= PLAYER_Y;
+        if (a.angle != b.angle) mask |= PLAYER_ANGLE;
+        if (a.hp != b.hp) mask |= PLAYER_HP;
+        if (a.ammo != b.ammo) mask |= PLAYER_AMMO;
+        if (a.kills != b.kills) mask |= PLAYER_KILLS;
+        if (a.shooting != b.shooting || a.reloading != b.reloading || a.hasWeapon != b.hasWeapon
+                || a.isGodMode != b.isGodMode || a.isDead != b.isDead) mask |= PLAYER_FLAGS;
+        if (!equals(a.name, b.name) || !equals(a.id, b.id)) mask |= PLAYER_NAME;
+        if (!equals(a.characterType, b.characterType)) mask |= PLAYER_CHARACTER;
+        if (a.deathTime != b.deathTime) mask |= PLAYER_DEATH_TIME;
+        if (a.lastInput != b.lastInput) mask |= PLAYER_LAST_INPUT;
+        return mask;
+    }
+
+    public static void applyPlayer(PlayerData target, PlayerData src, int mask) {
+        if ((mask & PLAYER_X) != 0) target.x = src.x;
+        if ((mask & PLAYER_Y) != 0) target.y = src.y;
+        if ((mask & PLAYER_ANGLE) != 0) target.angle = src.angle;
+        if ((mask & PLAYER_HP) != 0) target.hp = src.hp;
+        if ((mask & PLAYER_AMMO) != 0) target.ammo = src.ammo;
+        if ((mask & PLAYER_KILLS) != 0) target.kills = src.kills;
+        if ((mask & PLAYER_FLAGS) != 0) {
+            target.shooting = src.shooting;
+            target.reloading = src.reloading;
+            target.hasWeapon = src.hasWeapon;
+            target.isGodMode = src.isGodMode;
+            target.isDead = src.isDead;
+        }
+        if ((mask & PLAYER_NAME) != 0) {
+            target.id = src.id;
+            target.name = src.name;
+        }
+        if ((mask & PLAYER_CHARACTER) != 0) target.characterType = src.characterType;
+        if ((mask & PLAYER_DEATH_TIME) != 0) target.deathTime = src.deathTime;
+        if ((mask & PLAYER_LAST_INPUT) != 0) target.lastInput = src.lastInput;
+    }
+
+    public static int chickenMask(ChickenData a, ChickenData b) {
+        int mask = 0;
+        if (a.x != b.x) mask |= CHICKEN_X;
+        if (a.y != b.y) mask |= CHICKEN_Y;
+        if (a.hp != b.hp) mask |= CHICKEN_HP;
+        if (a.angle != b.angle) mask |= CHICKEN_ANGLE;
+        if (a.isMoving != b.isMoving || a.isHit != b.isHit || a.isIdle != b.isIdle) mask |= CHICKEN_FLAGS;
+        if (a.currentFrame != b.currentFrame) mask |= CHICKEN_FRAME;
+        return mask;
+    }
+
+    public static void applyChicken(ChickenData target, ChickenData src, int mask) {
+        if ((mask & CHICKEN_X) != 0) target.x = src.x;
+        if ((mask & CHICKEN_Y) != 0) target.y = src.y;
+        if ((mask & CHICKEN_HP) != 0) target.hp = src.hp;
+        if ((mask & CHICKEN_ANGLE) != 0) target.angle = src.angle;
+        if ((mask & CHICKEN_FLAGS) != 0) {
+            target.isMoving = src.isMoving;
+            target.isHit = src.isHit;
+            target.isIdle = src.isIdle;
+        }
+        if ((mask & CHICKEN_FRAME) != 0) target.currentFrame = src.currentFrame;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
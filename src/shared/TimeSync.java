@@ -0,0 +1,21 @@
+package shared;
+
+import java.io.Serializable;
+
+// Payload of the client's PING and the server's PONG. The client fills in its send time; the server echoes
+// it and adds when it received the ping and which tick it was on. The PONG's own timestamp is the server's
+// send time.
+public class TimeSync implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public long clientSendTime;
+    public long serverReceiveTime;
+    public int serverTick;
+
+    public TimeSync() {
+    }
+
+    public TimeSync(long clientSendTime) {
+        this.clientSendTime = clientSendTime;
+    }
+}
@@ -0,0 +1,20 @@
+package shared;
+
+import java.io.Serializable;
+
+public class WeaponData implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public int id;
+    public int x;
+    public int y;
+
+    public WeaponData() {
+    }
+
+    public WeaponData(int id, int x, int y) {
+        this.id = id;
+        this.x = x;
+        this.y = y;
+    }
+}
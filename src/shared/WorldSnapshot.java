@@ -0,0 +1,26 @@
+package shared;
+
+import java.io.Serializable;
+
+public class WorldSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public int tick;
+    public long serverTime;
+    public PlayerData[] players;
+    public ChickenData[] chickens;
+
+    public WorldSnapshot() {
+        this.tick = 0;
+        this.serverTime = System.currentTimeMillis();
+        this.players = new PlayerData[0];
+        this.chickens = new ChickenData[0];
+    }
+
+    public WorldSnapshot(int tick, PlayerData[] players, ChickenData[] chickens) {
+        this.tick = tick;
+        this.serverTime = System.currentTimeMillis();
+        this.players = players;
+        this.chickens = chickens;
+    }
+}